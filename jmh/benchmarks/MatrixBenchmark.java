@@ -0,0 +1,107 @@
+package benchmarks;
+
+import maths.Matrix;
+import maths.Matrix4;
+import maths.Vector4;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatrixBenchmark {
+    private Matrix a;
+    private Matrix b;
+    private Matrix4 a4;
+    private Matrix4 b4;
+    private Vector4 vector;
+
+    @Setup
+    public void setUp() {
+        // Camera-like matrix: rotation, translation and a bit of everything else, so that it is well conditioned
+        a = new Matrix(new double[] {
+                0.8, 0.1, -0.6, 0,
+                0.2, 0.9, 0.3, 0,
+                0.6, -0.4, 0.7, 0,
+                3, 40, 50, 1
+        }, 4, 4);
+        b = new Matrix(new double[] {
+                1.2, 0, 0, 0,
+                0, 1.6, 0, 0,
+                0.1, 0.2, -1.002, -1,
+                0, 0, -2.002, 0
+        }, 4, 4);
+        a4 = Matrix4.fromMatrix(a);
+        b4 = Matrix4.fromMatrix(b);
+        vector = new Vector4(1.5, -2.5, 3.5);
+    }
+
+    @Benchmark
+    public Matrix multiply() {
+        return a.multiply(b);
+    }
+
+    @Benchmark
+    public Matrix4 multiplyMatrix4() {
+        return a4.multiply(b4);
+    }
+
+    /**
+     * Closed form inverse, which Matrix.getInverse uses for 4x4 matrices
+     */
+    @Benchmark
+    public Matrix getInverse() {
+        return a.getInverse();
+    }
+
+    @Benchmark
+    public Matrix4 getInverseMatrix4() {
+        return a4.getInverse();
+    }
+
+    /**
+     * Adjugate made of cofactors divided by the determinant, the way Matrix.getInverse inverted 4x4 matrices before
+     */
+    @Benchmark
+    public Matrix getInverseCofactors() {
+        double[] cofactors = new double[16];
+        double[] minor = new double[9];
+
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                int p = 0;
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 4; j++) {
+                        if (i != row && j != column) {
+                            minor[p++] = a.get(i, j);
+                        }
+                    }
+                }
+
+                double sign = (row + column) % 2 == 0 ? 1 : -1;
+                cofactors[row * 4 + column] = sign * new Matrix(minor.clone(), 3, 3).getDeterminant();
+            }
+        }
+
+        double determinant = 0;
+        for (int i = 0; i < 4; i++) {
+            determinant += a.get(0, i) * cofactors[i];
+        }
+
+        return new Matrix(cofactors, 4, 4).transpose().multiply(1 / determinant);
+    }
+
+    @Benchmark
+    public Vector4 vectorMultiplyByMatrix() {
+        return vector.multiplyByMatrix(a);
+    }
+
+    @Benchmark
+    public Vector4 vectorMultiplyByMatrix4() {
+        return vector.multiplyByMatrix(a4);
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import meshes.IndexedMesh;
+import meshes.MeshWelder;
+import meshes.VertexCacheOptimizer;
+import org.openjdk.jmh.annotations.*;
+import parsers.OBJParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing alone (welding and vertex cache optimization disabled) and the two passes run on the parsed mesh separately
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OBJParserBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int faces;
+
+    private File file;
+    private IndexedMesh parsed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Spheres.writeOBJ(faces);
+        parsed = createParser().parse(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static OBJParser createParser() {
+        OBJParser parser = new OBJParser();
+        parser.setWelding(false);
+        parser.setVertexCacheOptimization(false);
+        return parser;
+    }
+
+    @Benchmark
+    public IndexedMesh parse() {
+        return createParser().parse(file);
+    }
+
+    @Benchmark
+    public MeshWelder.Result weld() {
+        return MeshWelder.weld(parsed, 0);
+    }
+
+    @Benchmark
+    public IndexedMesh optimizeVertexCache() {
+        return VertexCacheOptimizer.optimize(parsed);
+    }
+}
@@ -0,0 +1,50 @@
+package benchmarks;
+
+import cameras.PinholeRasterCamera;
+import org.openjdk.jmh.annotations.*;
+import parsers.OBJParser;
+import renderers.Rasterizer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end rasterize phase (transform, setup and fill) of a 100k triangle sphere
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RasterizerBenchmark {
+    @Param({"512x512", "1920x1080", "3840x2160"})
+    private String resolution;
+
+    private Rasterizer rasterizer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] size = resolution.split("x");
+        PinholeRasterCamera camera = new PinholeRasterCamera();
+        camera.setImageWidth(Integer.parseInt(size[0]));
+        camera.setImageHeight(Integer.parseInt(size[1]));
+
+        File file = Spheres.writeOBJ(100_000);
+        rasterizer = new Rasterizer(camera);
+        rasterizer.setObjectToPaint(new OBJParser().parse(file));
+        file.delete();
+
+        rasterizer.setYaw(30);
+        rasterizer.setPitch(200);
+        rasterizer.setRoll(100);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        rasterizer.render();
+        return rasterizer.getFrame();
+    }
+}
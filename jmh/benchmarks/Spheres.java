@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Generates UV spheres as OBJ files, the sphere is placed in front of the default camera (same as the Christmas tree)
+ */
+class Spheres {
+    /**
+     * @return temporary OBJ file of a sphere with approximately the given number of triangular faces
+     */
+    static File writeOBJ(int faces) throws IOException {
+        // rows * columns quads, two triangles each
+        int rows = Math.max(2, (int) Math.round(Math.sqrt(faces / 4.0)));
+        int columns = 2 * rows;
+
+        File file = File.createTempFile("sphere" + faces + "-", ".obj");
+        file.deleteOnExit();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath())) {
+            for (int i = 0; i <= rows; i++) {
+                double theta = Math.PI * i / rows;
+                for (int j = 0; j < columns; j++) {
+                    double phi = 2 * Math.PI * j / columns;
+                    writer.write(String.format(Locale.ROOT, "v %.6f %.6f %.6f%n",
+                            20 * Math.sin(theta) * Math.cos(phi), 20 + 20 * Math.cos(theta), 20 * Math.sin(theta) * Math.sin(phi)));
+                }
+            }
+
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < columns; j++) {
+                    int a = i * columns + j + 1;
+                    int b = (i + 1) * columns + j + 1;
+                    int c = (i + 1) * columns + (j + 1) % columns + 1;
+                    int d = i * columns + (j + 1) % columns + 1;
+                    writer.write("f " + a + " " + b + " " + c + "\nf " + a + " " + c + " " + d + "\n");
+                }
+            }
+        }
+
+        return file;
+    }
+}
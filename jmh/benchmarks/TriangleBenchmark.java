@@ -0,0 +1,39 @@
+package benchmarks;
+
+import maths.Triangle;
+import maths.Vector2;
+import maths.Vector3;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TriangleBenchmark {
+    private Vector3 v0;
+    private Vector3 v1;
+    private Vector3 point;
+    private Vector2 pixel;
+
+    @Setup
+    public void setUp() {
+        v0 = new Vector3(12.5, 40.25, 0.5);
+        v1 = new Vector3(300.75, 95.5, 0.5);
+        point = new Vector3(120, 80, 0);
+        pixel = new Vector2(120, 80);
+    }
+
+    @Benchmark
+    public double edgeFunction() {
+        return Triangle.edgeFunction(v0, v1, point);
+    }
+
+    @Benchmark
+    public double edgeFunctionVector2() {
+        return Triangle.edgeFunction(v0, v1, pixel);
+    }
+}
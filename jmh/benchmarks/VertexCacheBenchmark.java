@@ -0,0 +1,89 @@
+package benchmarks;
+
+import cameras.PinholeRasterCamera;
+import meshes.IndexedMesh;
+import meshes.VertexCacheOptimizer;
+import org.openjdk.jmh.annotations.*;
+import parsers.OBJParser;
+import renderers.Rasterizer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rasterize phase of a 100k triangle sphere before and after VertexCacheOptimizer, with the triangles in the order
+ * of the generated file (row by row) and shuffled (as in meshes whose faces are stored in no particular order).
+ * Average cache miss ratio of every order is printed by the setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class VertexCacheBenchmark {
+    @Param({"rows", "shuffled"})
+    private String order;
+
+    @Param({"false", "true"})
+    private boolean optimized;
+
+    private Rasterizer rasterizer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File file = Spheres.writeOBJ(100_000);
+        OBJParser parser = new OBJParser();
+        parser.setVertexCacheOptimization(false);
+        IndexedMesh mesh = parser.parse(file);
+        file.delete();
+
+        if (order.equals("shuffled")) {
+            mesh = shuffleTriangles(mesh, new Random(1));
+        }
+        if (optimized) {
+            mesh = VertexCacheOptimizer.optimize(mesh);
+        }
+
+        System.out.printf("%nACMR (%d vertex FIFO): %.3f%n", VertexCacheOptimizer.DEFAULT_CACHE_SIZE,
+                VertexCacheOptimizer.getAverageCacheMissRatio(mesh, VertexCacheOptimizer.DEFAULT_CACHE_SIZE));
+
+        rasterizer = new Rasterizer(new PinholeRasterCamera());
+        rasterizer.setObjectToPaint(mesh);
+        rasterizer.setYaw(30);
+        rasterizer.setPitch(200);
+        rasterizer.setRoll(100);
+    }
+
+    private static IndexedMesh shuffleTriangles(IndexedMesh mesh, Random random) {
+        int triangleCount = mesh.getTriangleCount();
+        int[] order = new int[triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            order[i] = i;
+        }
+        for (int i = triangleCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        int[] indices = new int[triangleCount * 3];
+        int[] colors = new int[triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            System.arraycopy(mesh.getIndices(), order[i] * 3, indices, i * 3, 3);
+            colors[i] = mesh.getColors()[order[i]];
+        }
+
+        return new IndexedMesh(mesh.getX(), mesh.getY(), mesh.getZ(), indices, colors);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        rasterizer.render();
+        return rasterizer.getFrame();
+    }
+}
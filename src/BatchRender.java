@@ -0,0 +1,261 @@
+import cameras.PinholeRasterCamera;
+import maths.Matrix;
+import meshes.IndexedMesh;
+import parsers.MeshCache;
+import parsers.OBJParser;
+import renderers.BatchRenderer;
+import renderers.Pose;
+import renderers.Rasterizer;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless entry point: renders an OBJ model in a list of poses and writes the frames into a directory.
+ * Frames are rendered and written concurrently, one per thread.
+ * <p>
+ * Raw frames are the color buffer as is: width * height little-endian 32-bit pixels (bytes B, G, R, unused),
+ * rows from top to bottom, without any header.
+ */
+public class BatchRender {
+    private static final String USAGE = """
+            Usage: BatchRender <model.obj> [options]
+              --output <directory>            directory for the frames (default: current directory)
+              --format png|raw                frame format (default: png)
+              --pose <yaw>,<pitch>,<roll>     rotation of the model in degrees, may be repeated (default: 180,180,180)
+              --poses <file>                  file with one pose per line, same format as --pose
+              --turntable <frames>            full turn around Oy in the given number of frames
+              --focal-length <mm>
+              --aperture <width>x<height>     film aperture in inches
+              --resolution <width>x<height>   image size in pixels
+              --gate fill|overscan            resolution gate
+              --projection perspective|orthographic
+              --camera-matrix <16 values>     comma separated camera-to-world matrix, row by row
+              --cull none|back|front          face culling (default: none)
+              --threads <count>               number of frames rendered at once""";
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+    private static void run(String[] args) {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            throw new IllegalArgumentException("Model file is not specified");
+        }
+
+        File modelFile = new File(args[0]);
+        File outputDirectory = new File(".");
+        boolean raw = false;
+        List<Pose> poses = new ArrayList<>();
+
+        PinholeRasterCamera camera = new PinholeRasterCamera();
+        int threads = Runtime.getRuntime().availableProcessors();
+        Rasterizer.CullMode cullMode = Rasterizer.CullMode.NONE;
+
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Value of " + option + " is missing");
+            }
+            String value = args[++i];
+
+            switch (option) {
+                case "--output" -> outputDirectory = new File(value);
+                case "--format" -> raw = switch (value) {
+                    case "png" -> false;
+                    case "raw" -> true;
+                    default -> throw new IllegalArgumentException("Unknown format: " + value);
+                };
+                case "--pose" -> poses.add(parsePose(value));
+                case "--turntable" -> poses.addAll(Pose.getTurntable(parseInt(value), 180, 180));
+                case "--poses" -> {
+                    try {
+                        for (String line : Files.readAllLines(Path.of(value))) {
+                            if (!line.isBlank()) {
+                                poses.add(parsePose(line.strip()));
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("Unable to read poses: " + e.getMessage());
+                    }
+                }
+                case "--focal-length" -> camera.setFocalLength(parseDouble(value));
+                case "--aperture" -> {
+                    double[] aperture = parsePair(value);
+                    camera.setFilmApertureWidth(aperture[0]);
+                    camera.setFilmApertureHeight(aperture[1]);
+                }
+                case "--resolution" -> {
+                    double[] resolution = parsePair(value);
+                    if (resolution[0] < 1 || resolution[1] < 1 || resolution[0] % 1 != 0 || resolution[1] % 1 != 0) {
+                        throw new IllegalArgumentException("Resolution should consist of positive integers: " + value);
+                    }
+                    camera.setImageWidth((int) resolution[0]);
+                    camera.setImageHeight((int) resolution[1]);
+                }
+                case "--gate" -> camera.setFitResolutionGate(parseEnum(PinholeRasterCamera.FitResolutionGate.class, value));
+                case "--projection" -> camera.setProjectionType(parseEnum(PinholeRasterCamera.ProjectionType.class, value));
+                case "--camera-matrix" -> {
+                    String[] values = value.split(",");
+                    if (values.length != 16) {
+                        throw new IllegalArgumentException("Camera matrix should have 16 values");
+                    }
+
+                    double[] matrix = new double[16];
+                    for (int j = 0; j < 16; j++) {
+                        matrix[j] = parseDouble(values[j]);
+                    }
+                    camera.setCameraMatrix(new Matrix(matrix, 4, 4));
+                }
+                case "--cull" -> cullMode = parseEnum(Rasterizer.CullMode.class, value);
+                case "--threads" -> threads = parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+
+        if (poses.isEmpty()) {
+            poses.add(new Pose(180, 180, 180)); // Initial position of the viewer sliders
+        }
+
+        if (!modelFile.isFile()) {
+            fail("Model file " + modelFile + " does not exist");
+        }
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Unable to create output directory " + outputDirectory);
+        }
+
+        // Options are valid from here on, so failures (e.g. of reading the model or writing a frame) are not usage errors
+        try {
+            render(modelFile, outputDirectory, raw, poses, camera, cullMode, threads);
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            fail(cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getClass().getSimpleName() + ": " + cause.getMessage());
+        }
+    }
+
+    private static void render(File modelFile, File outputDirectory, boolean raw, List<Pose> poses,
+                               PinholeRasterCamera camera, Rasterizer.CullMode cullMode, int threads) {
+        long loadStart = System.nanoTime();
+        OBJParser parser = new OBJParser();
+        IndexedMesh mesh = MeshCache.load(modelFile, parser);
+        System.out.printf("Loaded %s: %d triangles in %.0f ms%n", modelFile.getName(), mesh.getTriangleCount(),
+                (System.nanoTime() - loadStart) / 1e6);
+        if (parser.getLastWeld() != null) {
+            System.out.printf("Welded %d vertices, removed %d degenerate triangles: %.1f MB and %d vertex transforms per frame saved%n",
+                    parser.getLastWeld().verticesRemoved(), parser.getLastWeld().trianglesRemoved(),
+                    parser.getLastWeld().getBytesSaved() / 1e6, parser.getLastWeld().getTransformsSaved());
+        }
+
+        BatchRenderer renderer = new BatchRenderer(camera, mesh, threads);
+        renderer.setCullMode(cullMode);
+        // Every worker thread writes raw frames through its own buffer
+        ThreadLocal<ByteBuffer> rawBuffers = new ThreadLocal<>();
+        long start = System.nanoTime();
+
+        renderer.render(poses, (index, pose, frame) -> {
+            long writeStart = System.nanoTime();
+            File frameFile = new File(outputDirectory, String.format("frame_%04d.%s", index, raw ? "raw" : "png"));
+
+            if (raw) {
+                int[] color = frame.getColorBuffer();
+                ByteBuffer rawBuffer = rawBuffers.get();
+                if (rawBuffer == null || rawBuffer.capacity() != color.length * 4) {
+                    rawBuffer = ByteBuffer.allocateDirect(color.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+                    rawBuffers.set(rawBuffer);
+                }
+
+                rawBuffer.clear();
+                rawBuffer.asIntBuffer().put(color);
+
+                try (FileChannel channel = FileChannel.open(frameFile.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    while (rawBuffer.hasRemaining()) {
+                        channel.write(rawBuffer);
+                    }
+                }
+            } else {
+                ImageIO.write(frame.getFrame(), "png", frameFile);
+            }
+
+            System.out.printf("%s (yaw %d, pitch %d, roll %d): rasterize %.2f ms, write %.2f ms%n", frameFile.getName(),
+                    pose.yaw(), pose.pitch(), pose.roll(), frame.getRasterizeTime() / 1e6, (System.nanoTime() - writeStart) / 1e6);
+        });
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Rendered %d frames in %.2f s (%.1f frames/s)%n", poses.size(), seconds, poses.size() / seconds);
+    }
+
+    private static void fail(String message) {
+        System.err.println("Error: " + message);
+        System.exit(1);
+    }
+
+    private static Pose parsePose(String value) {
+        String[] angles = value.split(",");
+        if (angles.length != 3) {
+            throw new IllegalArgumentException("Pose should be <yaw>,<pitch>,<roll>: " + value);
+        }
+
+        try {
+            return new Pose(
+                    Integer.parseInt(angles[0].strip()),
+                    Integer.parseInt(angles[1].strip()),
+                    Integer.parseInt(angles[2].strip()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Pose angles should be integer degrees: " + value);
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an integer: " + value);
+        }
+    }
+
+    private static double[] parsePair(String value) {
+        String[] parts = value.split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Value should be <width>x<height>: " + value);
+        }
+
+        return new double[] {parseDouble(parts[0]), parseDouble(parts[1])};
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static <T extends Enum<T>> T parseEnum(Class<T> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + type.getSimpleName() + ": " + value);
+        }
+    }
+}
@@ -5,6 +5,12 @@ import java.lang.reflect.InvocationTargetException;
 
 public class Main {
     public static void main(String[] args) {
+        // Any arguments mean a batch render, there is no display needed for it
+        if (args.length > 0) {
+            BatchRender.main(args);
+            return;
+        }
+
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             SwingUtilities.invokeAndWait(ViewerFrame::new);
@@ -1,6 +1,7 @@
 package cameras;
 
 import maths.Matrix;
+import maths.Matrix4;
 import util.UnitsConverter;
 
 /**
@@ -21,7 +22,6 @@ public class PinholeRasterCamera {
     private double filmApertureWidth = 0.825;
     private double filmApertureHeight = 0.446;
 
-    // Todo: it looks like near clipping plane does not clip objects
     private double nearClippingPlane = 1;
     private double farClippingPlane = 1000;
 
@@ -46,6 +46,14 @@ public class PinholeRasterCamera {
             0, 40, 50, 1
     }, 4, 4);
 
+    // Inverse of cameraToWorld, computed when first needed after the camera matrix changes
+    private Matrix4 worldToCamera;
+    // World-to-camera matrix combined with the projection matrix, computed when first needed after any setting changes
+    private Matrix4 viewProjection;
+
+    // Incremented whenever any setting affecting the image changes
+    private long version;
+
     private double xScale = 1;
     private double yScale = 1;
 
@@ -70,7 +78,30 @@ public class PinholeRasterCamera {
         calculateCanvas();
     }
 
+    /**
+     * Creates a camera with the same settings, e.g. to give every rendering thread its own camera
+     */
+    public PinholeRasterCamera(PinholeRasterCamera camera) {
+        focalLength = camera.focalLength;
+        filmApertureWidth = camera.filmApertureWidth;
+        filmApertureHeight = camera.filmApertureHeight;
+        nearClippingPlane = camera.nearClippingPlane;
+        farClippingPlane = camera.farClippingPlane;
+        distanceToCanvas = camera.distanceToCanvas;
+        imageWidth = camera.imageWidth;
+        imageHeight = camera.imageHeight;
+        fitResolutionGate = camera.fitResolutionGate;
+        projectionType = camera.projectionType;
+        cameraToWorld = camera.cameraToWorld; // Matrix is not modified after creation, so it can be shared
+        xScale = camera.xScale;
+        yScale = camera.yScale;
+        calculateCanvas();
+    }
+
     private void calculateCanvas() {
+        version++;
+        viewProjection = null;
+
         canvasTop = ((filmApertureHeight * UnitsConverter.inchToMm / 2) / focalLength) * nearClippingPlane;
         canvasRight = ((filmApertureWidth * UnitsConverter.inchToMm / 2) / focalLength) * nearClippingPlane;
 
@@ -105,6 +136,8 @@ public class PinholeRasterCamera {
 
     public void setProjectionType(ProjectionType projectionType) {
         this.projectionType = projectionType;
+        version++;
+        viewProjection = null;
     }
 
     public void setNearClippingPlane(double nearClippingPlane) {
@@ -213,6 +246,79 @@ public class PinholeRasterCamera {
         }
 
         this.cameraToWorld = matrix;
+        this.worldToCamera = null;
         calculateCanvas();
     }
+
+    /**
+     * @return inverse of the camera matrix, it is cached until the camera matrix is replaced
+     */
+    public Matrix4 getWorldToCameraMatrix() {
+        if (worldToCamera == null) {
+            worldToCamera = Matrix4.fromMatrix(cameraToWorld).getInverse();
+
+            if (worldToCamera == null) {
+                throw new IllegalStateException("Camera matrix is not invertible");
+            }
+        }
+
+        return worldToCamera;
+    }
+
+    /**
+     * @return matrix transforming world space coordinates into homogeneous clip space coordinates
+     * (world-to-camera matrix multiplied by the projection matrix), it is cached until any camera setting changes
+     */
+    public Matrix4 getViewProjectionMatrix() {
+        if (viewProjection == null) {
+            viewProjection = getWorldToCameraMatrix().multiply(getProjectionMatrix());
+        }
+
+        return viewProjection;
+    }
+
+    public Matrix4 getProjectionMatrix() {
+        return projectionType == ProjectionType.PERSPECTIVE
+                ? computePerspectiveProjectionMatrix() : computeOrthographicProjectionMatrix();
+    }
+
+    private Matrix4 computePerspectiveProjectionMatrix() {
+        double n = nearClippingPlane;
+        double f = farClippingPlane;
+        double r = canvasRight;
+        double l = canvasLeft;
+        double t = canvasTop;
+        double b = canvasBottom;
+
+        return new Matrix4(
+                2 * n / (r - l)  , 0                , 0                    , 0 ,
+                0                , 2 * n / (t - b)  , 0                    , 0 ,
+                (r + l) / (r - l), (t + b) / (t - b), - (f + n) / (f - n)  , -1,
+                0                , 0                , - 2 * f * n / (f - n), 0
+        );
+    }
+
+    private Matrix4 computeOrthographicProjectionMatrix() {
+        double n = nearClippingPlane;
+        double f = farClippingPlane;
+        double r = canvasRight;
+        double l = canvasLeft;
+        double t = canvasTop;
+        double b = canvasBottom;
+
+        return new Matrix4(
+                2 / (r - l), 0          , 0            , - (r + l) / (r - l),
+                0          , 2 / (t - b), 0            , - (t + b) / (t - b),
+                0          , 0          , - 2 / (f - n), - (f + n) / (f - n),
+                0          , 0          , 0            , 1
+        );
+    }
+
+    /**
+     * Version changes whenever any setting affecting the image (projection, canvas, resolution, camera matrix) changes,
+     * so that whatever is derived from the camera can be recomputed only when needed.
+     */
+    public long getVersion() {
+        return version;
+    }
 }
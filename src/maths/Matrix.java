@@ -2,7 +2,6 @@ package maths;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
@@ -83,8 +82,10 @@ public class Matrix {
     }
 
     public Matrix multiply(double scalar) {
-        List<Double> multiplied = Arrays.stream(this.values).boxed().collect(Collectors.toList());
-        multiplied.replaceAll(integer -> integer * scalar);
+        double[] multiplied = new double[values.length];
+        for (int i = 0; i < multiplied.length; i++) {
+            multiplied[i] = values[i] * scalar;
+        }
         return new Matrix(multiplied, rows, columns);
     }
 
@@ -133,6 +134,20 @@ public class Matrix {
             return this.get(0, 0);
         } else if (this.rows == 2 && this.columns == 2) {
             return this.get(0, 0) * this.get(1, 1) - this.get(0, 1) * this.get(1, 0);
+        } else if (this.rows == 4) {
+            return Matrix4.fromMatrix(this).getDeterminant();
+        } else if (this.rows > 4) {
+            // Cofactor expansion takes factorial time, LU decomposition - cubic
+            LUDecomposition lu = decompose();
+            if (lu == null) {
+                return 0;
+            }
+
+            double determinant = lu.sign;
+            for (int i = 0; i < rows; i++) {
+                determinant *= lu.values[i * columns + i];
+            }
+            return determinant;
         }
 
 
@@ -177,7 +192,23 @@ public class Matrix {
         return determinant;
     }
 
+    /**
+     * Computes inverse matrix: 4x4 matrices use closed form (see Matrix4.getInverse), larger ones - LU decomposition,
+     * smaller ones - adjugate matrix made of cofactors.
+     * @return inverse matrix or null if the matrix is singular
+     */
     public Matrix getInverse() {
+        if (rows != columns) {
+            throw new RuntimeException("Non square matrix does not have an inverse");
+        }
+
+        if (rows == 4) {
+            Matrix4 inverse = Matrix4.fromMatrix(this).getInverse();
+            return inverse == null ? null : inverse.toMatrix();
+        } else if (rows > 4) {
+            return getLUInverse();
+        }
+
         double determinant = getDeterminant();
 
         if (determinant == 0) {
@@ -187,6 +218,102 @@ public class Matrix {
         return getCofactorMatrix().transpose().multiply(1 / determinant);
     }
 
+    /**
+     * LU decomposition with partial pivoting: rows of the matrix permuted by {@code permutation} equal L * U.
+     * L (below the diagonal, with implicit ones on it) and U (on and above the diagonal) are stored in {@code values}.
+     */
+    private record LUDecomposition(double[] values, int[] permutation, int sign) {
+    }
+
+    /**
+     * @return LU decomposition or null if the matrix is singular
+     */
+    private LUDecomposition decompose() {
+        int n = rows;
+        double[] lu = Arrays.copyOf(values, values.length);
+        int[] permutation = new int[n];
+        int sign = 1;
+
+        for (int i = 0; i < n; i++) {
+            permutation[i] = i;
+        }
+
+        for (int k = 0; k < n; k++) {
+            // Select the largest pivot in the column to keep the decomposition stable
+            int pivot = k;
+            for (int i = k + 1; i < n; i++) {
+                if (Math.abs(lu[i * n + k]) > Math.abs(lu[pivot * n + k])) {
+                    pivot = i;
+                }
+            }
+
+            if (lu[pivot * n + k] == 0) {
+                return null;
+            }
+
+            if (pivot != k) {
+                for (int j = 0; j < n; j++) {
+                    double tmp = lu[k * n + j];
+                    lu[k * n + j] = lu[pivot * n + j];
+                    lu[pivot * n + j] = tmp;
+                }
+
+                int tmp = permutation[k];
+                permutation[k] = permutation[pivot];
+                permutation[pivot] = tmp;
+                sign = -sign;
+            }
+
+            for (int i = k + 1; i < n; i++) {
+                double factor = lu[i * n + k] / lu[k * n + k];
+                lu[i * n + k] = factor;
+                for (int j = k + 1; j < n; j++) {
+                    lu[i * n + j] -= factor * lu[k * n + j];
+                }
+            }
+        }
+
+        return new LUDecomposition(lu, permutation, sign);
+    }
+
+    private Matrix getLUInverse() {
+        LUDecomposition lu = decompose();
+        if (lu == null) {
+            return null;
+        }
+
+        int n = rows;
+        double[] inverse = new double[values.length];
+        double[] column = new double[n];
+
+        // Solve A * x = e_j for every column j of the identity matrix
+        for (int j = 0; j < n; j++) {
+            // Forward substitution: L * y = P * e_j
+            for (int i = 0; i < n; i++) {
+                double value = lu.permutation[i] == j ? 1 : 0;
+                for (int k = 0; k < i; k++) {
+                    value -= lu.values[i * n + k] * column[k];
+                }
+                column[i] = value;
+            }
+
+            // Back substitution: U * x = y
+            for (int i = n - 1; i >= 0; i--) {
+                double value = column[i];
+                for (int k = i + 1; k < n; k++) {
+                    value -= lu.values[i * n + k] * column[k];
+                }
+                column[i] = value / lu.values[i * n + i];
+            }
+
+            for (int i = 0; i < n; i++) {
+                inverse[i * n + j] = column[i];
+            }
+        }
+
+        return new Matrix(inverse, n, n);
+    }
+
     private Matrix getCofactorMatrix() {
         double[] cofactors = new double[values.length];
 
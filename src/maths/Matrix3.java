@@ -0,0 +1,154 @@
+package maths;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+
+/**
+ * Immutable 3x3 matrix of real values, unrolled counterpart of maths.Matrix for linear transformations of Vector3.
+ * Vectors are treated as rows, i.e. transformed vector is v * M, same as in maths.Matrix.
+ */
+public final class Matrix3 {
+    public static final Matrix3 IDENTITY = new Matrix3(
+            1, 0, 0,
+            0, 1, 0,
+            0, 0, 1);
+
+    public final double m00, m01, m02;
+    public final double m10, m11, m12;
+    public final double m20, m21, m22;
+
+    public Matrix3(double m00, double m01, double m02,
+                   double m10, double m11, double m12,
+                   double m20, double m21, double m22) {
+        this.m00 = m00; this.m01 = m01; this.m02 = m02;
+        this.m10 = m10; this.m11 = m11; this.m12 = m12;
+        this.m20 = m20; this.m21 = m21; this.m22 = m22;
+    }
+
+    public static Matrix3 fromMatrix(Matrix matrix) {
+        if (matrix.getRows() != 3 || matrix.getColumns() != 3) {
+            throw new IllegalArgumentException("Matrix should be 3x3");
+        }
+
+        double[] v = matrix.values;
+        return new Matrix3(
+                v[0], v[1], v[2],
+                v[3], v[4], v[5],
+                v[6], v[7], v[8]);
+    }
+
+    public Matrix toMatrix() {
+        return new Matrix(new double[] {
+                m00, m01, m02,
+                m10, m11, m12,
+                m20, m21, m22
+        }, 3, 3);
+    }
+
+    public double get(int row, int column) {
+        return switch (row * 3 + column) {
+            case 0 -> m00; case 1 -> m01; case 2 -> m02;
+            case 3 -> m10; case 4 -> m11; case 5 -> m12;
+            case 6 -> m20; case 7 -> m21; case 8 -> m22;
+            default -> throw new IndexOutOfBoundsException("Index (" + row + ", " + column + ") is out of 3x3 matrix bounds");
+        };
+    }
+
+    public Matrix3 multiply(Matrix3 m) {
+        return new Matrix3(
+                m00 * m.m00 + m01 * m.m10 + m02 * m.m20,
+                m00 * m.m01 + m01 * m.m11 + m02 * m.m21,
+                m00 * m.m02 + m01 * m.m12 + m02 * m.m22,
+
+                m10 * m.m00 + m11 * m.m10 + m12 * m.m20,
+                m10 * m.m01 + m11 * m.m11 + m12 * m.m21,
+                m10 * m.m02 + m11 * m.m12 + m12 * m.m22,
+
+                m20 * m.m00 + m21 * m.m10 + m22 * m.m20,
+                m20 * m.m01 + m21 * m.m11 + m22 * m.m21,
+                m20 * m.m02 + m21 * m.m12 + m22 * m.m22);
+    }
+
+    public Matrix3 multiply(double scalar) {
+        return new Matrix3(
+                m00 * scalar, m01 * scalar, m02 * scalar,
+                m10 * scalar, m11 * scalar, m12 * scalar,
+                m20 * scalar, m21 * scalar, m22 * scalar);
+    }
+
+    public Matrix3 transpose() {
+        return new Matrix3(
+                m00, m10, m20,
+                m01, m11, m21,
+                m02, m12, m22);
+    }
+
+    public double getDeterminant() {
+        return m00 * (m11 * m22 - m12 * m21)
+                - m01 * (m10 * m22 - m12 * m20)
+                + m02 * (m10 * m21 - m11 * m20);
+    }
+
+    /**
+     * @return inverse matrix or null if the matrix is singular (same as Matrix.getInverse)
+     */
+    public Matrix3 getInverse() {
+        double c00 = m11 * m22 - m12 * m21;
+        double c01 = m12 * m20 - m10 * m22;
+        double c02 = m10 * m21 - m11 * m20;
+
+        double determinant = m00 * c00 + m01 * c01 + m02 * c02;
+
+        if (determinant == 0) {
+            return null;
+        }
+
+        double inv = 1 / determinant;
+
+        return new Matrix3(
+                c00 * inv,
+                (m02 * m21 - m01 * m22) * inv,
+                (m01 * m12 - m02 * m11) * inv,
+
+                c01 * inv,
+                (m00 * m22 - m02 * m20) * inv,
+                (m02 * m10 - m00 * m12) * inv,
+
+                c02 * inv,
+                (m01 * m20 - m00 * m21) * inv,
+                (m00 * m11 - m01 * m10) * inv);
+    }
+
+    // Rotation matrices are the same as the ones built by maths.Matrix
+
+    public static Matrix3 getXYRightHandedRotationMatrix(double degAngle) {
+        double radAngle = Math.toRadians(degAngle);
+        return new Matrix3(
+                cos(radAngle), -sin(radAngle), 0,
+                sin(radAngle), cos(radAngle), 0,
+                0, 0, 1);
+    }
+
+    public static Matrix3 getYZRightHandedRotationMatrixAlt(double degAngle) {
+        double radAngle = Math.toRadians(degAngle);
+        return new Matrix3(
+                1, 0, 0,
+                0, cos(radAngle), -sin(radAngle),
+                0, sin(radAngle), cos(radAngle));
+    }
+
+    public static Matrix3 getXZRightHandedRotationMatrix(double degAngle) {
+        double radAngle = Math.toRadians(degAngle);
+        return new Matrix3(
+                cos(radAngle), 0, -sin(radAngle),
+                0, 1, 0,
+                sin(radAngle), 0, cos(radAngle));
+    }
+
+    @Override
+    public String toString() {
+        return "\n" + m00 + " " + m01 + " " + m02 +
+                "\n" + m10 + " " + m11 + " " + m12 +
+                "\n" + m20 + " " + m21 + " " + m22 + "\n";
+    }
+}
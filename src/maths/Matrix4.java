@@ -0,0 +1,187 @@
+package maths;
+
+/**
+ * Immutable 4x4 matrix of real values. Operations are unrolled and do not allocate anything but the result,
+ * which makes this class preferable to maths.Matrix on hot paths (e.g. homogeneous transforms of vertices).
+ * Vectors are treated as rows, i.e. transformed vector is v * M, same as in maths.Matrix.
+ */
+public final class Matrix4 {
+    public static final Matrix4 IDENTITY = new Matrix4(
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1);
+
+    public final double m00, m01, m02, m03;
+    public final double m10, m11, m12, m13;
+    public final double m20, m21, m22, m23;
+    public final double m30, m31, m32, m33;
+
+    public Matrix4(double m00, double m01, double m02, double m03,
+                   double m10, double m11, double m12, double m13,
+                   double m20, double m21, double m22, double m23,
+                   double m30, double m31, double m32, double m33) {
+        this.m00 = m00; this.m01 = m01; this.m02 = m02; this.m03 = m03;
+        this.m10 = m10; this.m11 = m11; this.m12 = m12; this.m13 = m13;
+        this.m20 = m20; this.m21 = m21; this.m22 = m22; this.m23 = m23;
+        this.m30 = m30; this.m31 = m31; this.m32 = m32; this.m33 = m33;
+    }
+
+    public static Matrix4 fromMatrix(Matrix matrix) {
+        if (matrix.getRows() != 4 || matrix.getColumns() != 4) {
+            throw new IllegalArgumentException("Matrix should be 4x4");
+        }
+
+        double[] v = matrix.values;
+        return new Matrix4(
+                v[0], v[1], v[2], v[3],
+                v[4], v[5], v[6], v[7],
+                v[8], v[9], v[10], v[11],
+                v[12], v[13], v[14], v[15]);
+    }
+
+    public Matrix toMatrix() {
+        return new Matrix(new double[] {
+                m00, m01, m02, m03,
+                m10, m11, m12, m13,
+                m20, m21, m22, m23,
+                m30, m31, m32, m33
+        }, 4, 4);
+    }
+
+    public double get(int row, int column) {
+        return switch (row * 4 + column) {
+            case 0 -> m00; case 1 -> m01; case 2 -> m02; case 3 -> m03;
+            case 4 -> m10; case 5 -> m11; case 6 -> m12; case 7 -> m13;
+            case 8 -> m20; case 9 -> m21; case 10 -> m22; case 11 -> m23;
+            case 12 -> m30; case 13 -> m31; case 14 -> m32; case 15 -> m33;
+            default -> throw new IndexOutOfBoundsException("Index (" + row + ", " + column + ") is out of 4x4 matrix bounds");
+        };
+    }
+
+    public Matrix4 multiply(Matrix4 m) {
+        return new Matrix4(
+                m00 * m.m00 + m01 * m.m10 + m02 * m.m20 + m03 * m.m30,
+                m00 * m.m01 + m01 * m.m11 + m02 * m.m21 + m03 * m.m31,
+                m00 * m.m02 + m01 * m.m12 + m02 * m.m22 + m03 * m.m32,
+                m00 * m.m03 + m01 * m.m13 + m02 * m.m23 + m03 * m.m33,
+
+                m10 * m.m00 + m11 * m.m10 + m12 * m.m20 + m13 * m.m30,
+                m10 * m.m01 + m11 * m.m11 + m12 * m.m21 + m13 * m.m31,
+                m10 * m.m02 + m11 * m.m12 + m12 * m.m22 + m13 * m.m32,
+                m10 * m.m03 + m11 * m.m13 + m12 * m.m23 + m13 * m.m33,
+
+                m20 * m.m00 + m21 * m.m10 + m22 * m.m20 + m23 * m.m30,
+                m20 * m.m01 + m21 * m.m11 + m22 * m.m21 + m23 * m.m31,
+                m20 * m.m02 + m21 * m.m12 + m22 * m.m22 + m23 * m.m32,
+                m20 * m.m03 + m21 * m.m13 + m22 * m.m23 + m23 * m.m33,
+
+                m30 * m.m00 + m31 * m.m10 + m32 * m.m20 + m33 * m.m30,
+                m30 * m.m01 + m31 * m.m11 + m32 * m.m21 + m33 * m.m31,
+                m30 * m.m02 + m31 * m.m12 + m32 * m.m22 + m33 * m.m32,
+                m30 * m.m03 + m31 * m.m13 + m32 * m.m23 + m33 * m.m33);
+    }
+
+    public Matrix4 multiply(double scalar) {
+        return new Matrix4(
+                m00 * scalar, m01 * scalar, m02 * scalar, m03 * scalar,
+                m10 * scalar, m11 * scalar, m12 * scalar, m13 * scalar,
+                m20 * scalar, m21 * scalar, m22 * scalar, m23 * scalar,
+                m30 * scalar, m31 * scalar, m32 * scalar, m33 * scalar);
+    }
+
+    public Matrix4 transpose() {
+        return new Matrix4(
+                m00, m10, m20, m30,
+                m01, m11, m21, m31,
+                m02, m12, m22, m32,
+                m03, m13, m23, m33);
+    }
+
+    /**
+     * Extends a 3x3 linear transformation to homogeneous coordinates
+     */
+    public static Matrix4 fromMatrix3(Matrix3 m) {
+        return new Matrix4(
+                m.m00, m.m01, m.m02, 0,
+                m.m10, m.m11, m.m12, 0,
+                m.m20, m.m21, m.m22, 0,
+                0, 0, 0, 1);
+    }
+
+    public double getDeterminant() {
+        // 2x2 determinants of the two upper and the two lower rows (Laplace expansion by complementary minors)
+        double s0 = m00 * m11 - m10 * m01;
+        double s1 = m00 * m12 - m10 * m02;
+        double s2 = m00 * m13 - m10 * m03;
+        double s3 = m01 * m12 - m11 * m02;
+        double s4 = m01 * m13 - m11 * m03;
+        double s5 = m02 * m13 - m12 * m03;
+
+        double c5 = m22 * m33 - m32 * m23;
+        double c4 = m21 * m33 - m31 * m23;
+        double c3 = m21 * m32 - m31 * m22;
+        double c2 = m20 * m33 - m30 * m23;
+        double c1 = m20 * m32 - m30 * m22;
+        double c0 = m20 * m31 - m30 * m21;
+
+        return s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+    }
+
+    /**
+     * Closed form inverse (adjugate divided by determinant) built from the 2x2 minors of the upper and lower rows.
+     * @return inverse matrix or null if the matrix is singular (same as Matrix.getInverse)
+     */
+    public Matrix4 getInverse() {
+        double s0 = m00 * m11 - m10 * m01;
+        double s1 = m00 * m12 - m10 * m02;
+        double s2 = m00 * m13 - m10 * m03;
+        double s3 = m01 * m12 - m11 * m02;
+        double s4 = m01 * m13 - m11 * m03;
+        double s5 = m02 * m13 - m12 * m03;
+
+        double c5 = m22 * m33 - m32 * m23;
+        double c4 = m21 * m33 - m31 * m23;
+        double c3 = m21 * m32 - m31 * m22;
+        double c2 = m20 * m33 - m30 * m23;
+        double c1 = m20 * m32 - m30 * m22;
+        double c0 = m20 * m31 - m30 * m21;
+
+        double determinant = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+
+        if (determinant == 0) {
+            return null;
+        }
+
+        double inv = 1 / determinant;
+
+        return new Matrix4(
+                ( m11 * c5 - m12 * c4 + m13 * c3) * inv,
+                (-m01 * c5 + m02 * c4 - m03 * c3) * inv,
+                ( m31 * s5 - m32 * s4 + m33 * s3) * inv,
+                (-m21 * s5 + m22 * s4 - m23 * s3) * inv,
+
+                (-m10 * c5 + m12 * c2 - m13 * c1) * inv,
+                ( m00 * c5 - m02 * c2 + m03 * c1) * inv,
+                (-m30 * s5 + m32 * s2 - m33 * s1) * inv,
+                ( m20 * s5 - m22 * s2 + m23 * s1) * inv,
+
+                ( m10 * c4 - m11 * c2 + m13 * c0) * inv,
+                (-m00 * c4 + m01 * c2 - m03 * c0) * inv,
+                ( m30 * s4 - m31 * s2 + m33 * s0) * inv,
+                (-m20 * s4 + m21 * s2 - m23 * s0) * inv,
+
+                (-m10 * c3 + m11 * c1 - m12 * c0) * inv,
+                ( m00 * c3 - m01 * c1 + m02 * c0) * inv,
+                (-m30 * s3 + m31 * s1 - m32 * s0) * inv,
+                ( m20 * s3 - m21 * s1 + m22 * s0) * inv);
+    }
+
+    @Override
+    public String toString() {
+        return "\n" + m00 + " " + m01 + " " + m02 + " " + m03 +
+                "\n" + m10 + " " + m11 + " " + m12 + " " + m13 +
+                "\n" + m20 + " " + m21 + " " + m22 + " " + m23 +
+                "\n" + m30 + " " + m31 + " " + m32 + " " + m33 + "\n";
+    }
+}
@@ -3,17 +3,12 @@ package maths;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Vector3 {
-    private final double[] values;
-    
+public final class Vector3 {
     public final double x;
     public final double y;
     public final double z;
 
-    private Double magnitude = null;
-
     public Vector3(double x, double y, double z) {
-        this.values = new double[] {x, y, z};
         this.x = x;
         this.y = y;
         this.z = z;
@@ -41,39 +36,16 @@ public class Vector3 {
     }
 
     public double getMagnitude() {
-        if (magnitude != null) {
-            return magnitude;
-        }
-        int mg = 0;
-
-        for (double value : values) {
-            mg += value * value;
-        }
-
-        magnitude = Math.sqrt(mg);
-        return magnitude;
+        return Math.sqrt(x * x + y * y + z * z);
     }
 
     public Vector3 normalize() {
-        double[] newValues = new double[values.length];
-        for (int i = 0; i < newValues.length; i++) {
-            newValues[i] = values[i] / getMagnitude();
-        }
-
-        return new Vector3(newValues[0], newValues[1], newValues[2]);
+        double magnitude = getMagnitude();
+        return new Vector3(x / magnitude, y / magnitude, z / magnitude);
     }
 
     public double dotProduct(Vector3 vector) {
-        if (values.length != vector.values.length) {
-            throw new IllegalArgumentException("Vectors are not of the same length");
-        }
-
-        double dotProduct = 0;
-        for (int i = 0; i < values.length; i++) {
-            dotProduct += values[i] * vector.values[i];
-        }
-
-        return dotProduct;
+        return x * vector.x + y * vector.y + z * vector.z;
     }
 
 //    /**
@@ -95,20 +67,21 @@ public class Vector3 {
 //    }
 
     public Vector3 multiplyByMatrix(Matrix matrix) {
-        if (values.length != matrix.getRows()) {
+        if (matrix.getRows() != 3) {
             throw new IllegalArgumentException("Matrix rows does not equal to vector elements");
         }
 
-        double[] newValues = new double[values.length];
-        for (int i = 0; i < values.length; i++) {
-            double value = 0;
-            for (int j = 0; j < matrix.getRows(); j++) {
-                value += values[j] * matrix.get(j, i);
-            }
-            newValues[i] = value;
-        }
+        return new Vector3(
+                x * matrix.get(0, 0) + y * matrix.get(1, 0) + z * matrix.get(2, 0),
+                x * matrix.get(0, 1) + y * matrix.get(1, 1) + z * matrix.get(2, 1),
+                x * matrix.get(0, 2) + y * matrix.get(1, 2) + z * matrix.get(2, 2));
+    }
 
-        return new Vector3(newValues[0], newValues[1], newValues[2]);
+    public Vector3 multiplyByMatrix(Matrix3 matrix) {
+        return new Vector3(
+                x * matrix.m00 + y * matrix.m10 + z * matrix.m20,
+                x * matrix.m01 + y * matrix.m11 + z * matrix.m21,
+                x * matrix.m02 + y * matrix.m12 + z * matrix.m22);
     }
 
     /**
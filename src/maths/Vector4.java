@@ -1,9 +1,6 @@
 package maths;
 
-public class Vector4 {
-
-    private final double[] values;
-
+public final class Vector4 {
     public final double x;
     public final double y;
     public final double z;
@@ -15,7 +12,6 @@ public class Vector4 {
         this.y = y;
         this.z = z;
         this.w = 1;
-        this.values = new double[] {x, y, z, w};
     }
 
     public Vector4(double x, double y, double z, double w) {
@@ -23,7 +19,6 @@ public class Vector4 {
         this.y = y;
         this.z = z;
         this.w = w;
-        this.values = new double[] {x, y, z, w};
     }
 
     public Vector3 getAsVector3() {
@@ -31,20 +26,23 @@ public class Vector4 {
     }
 
     public Vector4 multiplyByMatrix(Matrix matrix) {
-        if (values.length != matrix.getRows()) {
+        if (matrix.getRows() != 4) {
             throw new IllegalArgumentException("Matrix rows does not equal to vector elements");
         }
 
-        double[] newValues = new double[values.length];
-        for (int i = 0; i < values.length; i++) {
-            double value = 0;
-            for (int j = 0; j < matrix.getRows(); j++) {
-                value += values[j] * matrix.get(j, i);
-            }
-            newValues[i] = value;
-        }
+        return new Vector4(
+                x * matrix.get(0, 0) + y * matrix.get(1, 0) + z * matrix.get(2, 0) + w * matrix.get(3, 0),
+                x * matrix.get(0, 1) + y * matrix.get(1, 1) + z * matrix.get(2, 1) + w * matrix.get(3, 1),
+                x * matrix.get(0, 2) + y * matrix.get(1, 2) + z * matrix.get(2, 2) + w * matrix.get(3, 2),
+                x * matrix.get(0, 3) + y * matrix.get(1, 3) + z * matrix.get(2, 3) + w * matrix.get(3, 3));
+    }
 
-        return new Vector4(newValues[0], newValues[1], newValues[2], newValues[3]);
+    public Vector4 multiplyByMatrix(Matrix4 matrix) {
+        return new Vector4(
+                x * matrix.m00 + y * matrix.m10 + z * matrix.m20 + w * matrix.m30,
+                x * matrix.m01 + y * matrix.m11 + z * matrix.m21 + w * matrix.m31,
+                x * matrix.m02 + y * matrix.m12 + z * matrix.m22 + w * matrix.m32,
+                x * matrix.m03 + y * matrix.m13 + z * matrix.m23 + w * matrix.m33);
     }
 
     @Override
@@ -0,0 +1,302 @@
+package meshes;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Bounding volume hierarchy over the triangles of a mesh: a binary tree of axis-aligned bounding boxes,
+ * whose leaves hold at most leafSize triangles. Used to skip whole groups of triangles which are outside the view.
+ * <p>
+ * Triangles are sorted along the Z-order (Morton) curve, so that every node covers a contiguous range of close
+ * triangles in getTriangles. A node of n > leafSize triangles gives its left child the largest power of two number
+ * of full leaves which is less than n / leafSize, the right child gets the rest. Therefore the shape of the tree
+ * depends only on the number of triangles: nodes are stored in depth-first order, the left child of a node follows it
+ * and the tree has 2 * ceil(n / leafSize) - 1 nodes, so only the boxes and the triangle order have to be stored.
+ */
+public final class BoundingVolumeHierarchy {
+    public static final int DEFAULT_LEAF_SIZE = 16;
+    // Smaller subtrees are built by the thread which splits them
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final int leafSize;
+    // minX, minY, minZ, maxX, maxY, maxZ of every node
+    private final float[] bounds;
+    private final int[] triangles;
+    // First triangle (index into triangles) and number of triangles of every node
+    private final int[] ranges;
+
+    /**
+     * Creates the hierarchy from previously built boxes and triangle order (see getBounds and getTriangles)
+     */
+    public BoundingVolumeHierarchy(int leafSize, float[] bounds, int[] triangles) {
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("Leaf size should be positive");
+        } else if (bounds.length != 6 * getNodeCount(triangles.length, leafSize)) {
+            throw new IllegalArgumentException("Number of bounding boxes does not match the number of triangles");
+        }
+
+        for (int triangle : triangles) {
+            if (triangle < 0 || triangle >= triangles.length) {
+                throw new IllegalArgumentException("Triangle index " + triangle + " is out of bounds");
+            }
+        }
+
+        this.leafSize = leafSize;
+        this.bounds = bounds;
+        this.triangles = triangles;
+        ranges = new int[2 * getNodeCount(triangles.length, leafSize)];
+
+        if (triangles.length > 0) {
+            setRanges(0, 0, triangles.length);
+        }
+    }
+
+    public static BoundingVolumeHierarchy build(IndexedMesh mesh) {
+        return build(mesh, DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * Builds the hierarchy of the mesh, subtrees are built in parallel
+     */
+    public static BoundingVolumeHierarchy build(IndexedMesh mesh, int leafSize) {
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("Leaf size should be positive");
+        }
+
+        int triangleCount = mesh.getTriangleCount();
+        float[] bounds = new float[6 * getNodeCount(triangleCount, leafSize)];
+        int[] triangles = new int[triangleCount];
+
+        if (triangleCount > 0) {
+            new Builder(mesh, leafSize, bounds, triangles).build();
+        }
+
+        return new BoundingVolumeHierarchy(leafSize, bounds, triangles);
+    }
+
+    public static int getNodeCount(int triangleCount, int leafSize) {
+        return triangleCount == 0 ? 0 : 2 * getLeafCount(triangleCount, leafSize) - 1;
+    }
+
+    private static int getLeafCount(int triangleCount, int leafSize) {
+        return triangleCount == 0 ? 0 : (triangleCount - 1) / leafSize + 1;
+    }
+
+    /**
+     * @return number of triangles given to the left child of a node of more than leafSize triangles
+     */
+    private static int getLeftCount(int triangleCount, int leafSize) {
+        return leafSize * Integer.highestOneBit(getLeafCount(triangleCount, leafSize) - 1);
+    }
+
+    private void setRanges(int node, int first, int count) {
+        ranges[node * 2] = first;
+        ranges[node * 2 + 1] = count;
+
+        if (count > leafSize) {
+            int leftCount = getLeftCount(count, leafSize);
+            setRanges(node + 1, first, leftCount);
+            setRanges(getRightChild(node), first + leftCount, count - leftCount);
+        }
+    }
+
+    public int getNodeCount() {
+        return ranges.length / 2;
+    }
+
+    public boolean isLeaf(int node) {
+        return ranges[node * 2 + 1] <= leafSize;
+    }
+
+    public int getLeftChild(int node) {
+        return node + 1;
+    }
+
+    public int getRightChild(int node) {
+        // Left subtree is a full tree of 2 * leaves - 1 nodes
+        return node + 2 * Integer.highestOneBit(getLeafCount(ranges[node * 2 + 1], leafSize) - 1);
+    }
+
+    /**
+     * @return index of the first triangle of the node in getTriangles
+     */
+    public int getFirst(int node) {
+        return ranges[node * 2];
+    }
+
+    public int getCount(int node) {
+        return ranges[node * 2 + 1];
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    /**
+     * @return minX, minY, minZ, maxX, maxY, maxZ of every node
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return mesh triangle indices ordered so that triangles of every node are contiguous
+     */
+    public int[] getTriangles() {
+        return triangles;
+    }
+
+    private static class Builder {
+        // Bits of every coordinate in the Morton code of a triangle, see spreadBits
+        private static final int MORTON_BITS = 10;
+
+        private final int leafSize;
+        private final float[] bounds;
+        private final int[] triangles;
+
+        private final float[] x;
+        private final float[] y;
+        private final float[] z;
+        private final int[] indices;
+
+        Builder(IndexedMesh mesh, int leafSize, float[] bounds, int[] triangles) {
+            this.leafSize = leafSize;
+            this.bounds = bounds;
+            this.triangles = triangles;
+
+            x = mesh.getX();
+            y = mesh.getY();
+            z = mesh.getZ();
+            indices = mesh.getIndices();
+        }
+
+        void build() {
+            sortByMortonCode();
+            ForkJoinPool.commonPool().invoke(new BoundsTask(0, 0, triangles.length));
+        }
+
+        /**
+         * Orders triangles along the Z-order curve through the centers of their bounding boxes. Consecutive triangles
+         * are then close to each other, so any range of them (i.e. a node) has a small bounding box
+         */
+        private void sortByMortonCode() {
+            float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+            float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+            for (int i = 0; i < x.length; i++) {
+                min[0] = Math.min(min[0], x[i]);
+                min[1] = Math.min(min[1], y[i]);
+                min[2] = Math.min(min[2], z[i]);
+                max[0] = Math.max(max[0], x[i]);
+                max[1] = Math.max(max[1], y[i]);
+                max[2] = Math.max(max[2], z[i]);
+            }
+
+            // Centers are scaled to the grid of 2^MORTON_BITS cells along every axis
+            double[] scale = new double[3];
+            for (int axis = 0; axis < 3; axis++) {
+                double extent = max[axis] - min[axis];
+                scale[axis] = extent > 0 ? ((1 << MORTON_BITS) - 1) / extent : 0;
+            }
+
+            // Morton code in the high half, triangle index in the low one
+            long[] keys = new long[triangles.length];
+            IntStream.range(0, triangles.length).parallel().forEach(i -> {
+                int i0 = indices[i * 3];
+                int i1 = indices[i * 3 + 1];
+                int i2 = indices[i * 3 + 2];
+
+                double centerX = (Math.min(x[i0], Math.min(x[i1], x[i2])) + Math.max(x[i0], Math.max(x[i1], x[i2]))) / 2;
+                double centerY = (Math.min(y[i0], Math.min(y[i1], y[i2])) + Math.max(y[i0], Math.max(y[i1], y[i2]))) / 2;
+                double centerZ = (Math.min(z[i0], Math.min(z[i1], z[i2])) + Math.max(z[i0], Math.max(z[i1], z[i2]))) / 2;
+
+                long code = spreadBits((int) ((centerX - min[0]) * scale[0]))
+                        | spreadBits((int) ((centerY - min[1]) * scale[1])) << 1
+                        | spreadBits((int) ((centerZ - min[2]) * scale[2])) << 2;
+                keys[i] = code << 32 | i;
+            });
+
+            Arrays.parallelSort(keys);
+            Arrays.parallelSetAll(triangles, i -> (int) keys[i]);
+        }
+
+        /**
+         * Inserts two zero bits before each of the lowest 10 bits of the value
+         */
+        private static long spreadBits(int value) {
+            long result = value & 0x3FF;
+            result = (result | result << 16) & 0x30000FF;
+            result = (result | result << 8) & 0x300F00F;
+            result = (result | result << 4) & 0x30C30C3;
+            result = (result | result << 2) & 0x9249249;
+            return result;
+        }
+
+        private class BoundsTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int node;
+            private final int first;
+            private final int count;
+
+            BoundsTask(int node, int first, int count) {
+                this.node = node;
+                this.first = first;
+                this.count = count;
+            }
+
+            @Override
+            protected void compute() {
+                setBounds(node, first, count);
+            }
+
+            private void setBounds(int node, int first, int count) {
+                if (count <= leafSize) {
+                    setLeafBounds(node, first, count);
+                    return;
+                }
+
+                int leftCount = getLeftCount(count, leafSize);
+                int left = node + 1;
+                int right = node + 2 * Integer.highestOneBit(getLeafCount(count, leafSize) - 1);
+
+                if (count > PARALLEL_THRESHOLD) {
+                    invokeAll(new BoundsTask(left, first, leftCount), new BoundsTask(right, first + leftCount, count - leftCount));
+                } else {
+                    setBounds(left, first, leftCount);
+                    setBounds(right, first + leftCount, count - leftCount);
+                }
+
+                for (int i = 0; i < 3; i++) {
+                    bounds[node * 6 + i] = Math.min(bounds[left * 6 + i], bounds[right * 6 + i]);
+                    bounds[node * 6 + 3 + i] = Math.max(bounds[left * 6 + 3 + i], bounds[right * 6 + 3 + i]);
+                }
+            }
+        }
+
+        private void setLeafBounds(int node, int first, int count) {
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+            for (int i = first; i < first + count; i++) {
+                for (int k = 0; k < 3; k++) {
+                    int vertex = indices[triangles[i] * 3 + k];
+                    minX = Math.min(minX, x[vertex]);
+                    minY = Math.min(minY, y[vertex]);
+                    minZ = Math.min(minZ, z[vertex]);
+                    maxX = Math.max(maxX, x[vertex]);
+                    maxY = Math.max(maxY, y[vertex]);
+                    maxZ = Math.max(maxZ, z[vertex]);
+                }
+            }
+
+            bounds[node * 6] = minX;
+            bounds[node * 6 + 1] = minY;
+            bounds[node * 6 + 2] = minZ;
+            bounds[node * 6 + 3] = maxX;
+            bounds[node * 6 + 4] = maxY;
+            bounds[node * 6 + 5] = maxZ;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package meshes;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Triangle mesh stored as a vertex buffer and an index buffer.
+ * Vertex positions are kept in separate x, y, z arrays (struct of arrays), every three consecutive indices
+ * form a triangle, and every triangle has its own RGB color. Vertices shared by several triangles are stored once.
+ */
+public final class IndexedMesh {
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+
+    private final int[] indices;
+    private final int[] colors;
+
+    // Built on first use, shared by all renderers of the mesh
+    private volatile BoundingVolumeHierarchy hierarchy;
+    // Null until built in the background, see buildLevelsOfDetail
+    private volatile List<LevelOfDetail> levelsOfDetail;
+    private CompletableFuture<List<LevelOfDetail>> levelsOfDetailBuild;
+
+    public IndexedMesh(float[] x, float[] y, float[] z, int[] indices, int[] colors) {
+        this(x, y, z, indices, colors, null);
+    }
+
+    /**
+     * @param hierarchy previously built hierarchy of the same triangles (e.g. a cached one) or null to build it on first use
+     */
+    public IndexedMesh(float[] x, float[] y, float[] z, int[] indices, int[] colors, BoundingVolumeHierarchy hierarchy) {
+        this(x, y, z, indices, colors, hierarchy, null);
+    }
+
+    /**
+     * @param levelsOfDetail previously built levels of detail of the mesh (e.g. cached ones) or null if they are not built
+     */
+    public IndexedMesh(float[] x, float[] y, float[] z, int[] indices, int[] colors, BoundingVolumeHierarchy hierarchy,
+                       List<LevelOfDetail> levelsOfDetail) {
+        if (x.length != y.length || x.length != z.length) {
+            throw new IllegalArgumentException("Vertex coordinate arrays should have the same length");
+        } else if (indices.length % 3 != 0) {
+            throw new IllegalArgumentException("Number of indices should be a multiple of 3");
+        } else if (colors.length != indices.length / 3) {
+            throw new IllegalArgumentException("Every triangle should have a color");
+        }
+
+        for (int index : indices) {
+            if (index < 0 || index >= x.length) {
+                throw new IllegalArgumentException("Vertex index " + index + " is out of bounds");
+            }
+        }
+
+        if (hierarchy != null && hierarchy.getTriangles().length != colors.length) {
+            throw new IllegalArgumentException("Hierarchy should cover every triangle");
+        }
+
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.indices = indices;
+        this.colors = colors;
+        this.hierarchy = hierarchy;
+        this.levelsOfDetail = levelsOfDetail == null ? null : List.copyOf(levelsOfDetail);
+    }
+
+    public int getVertexCount() {
+        return x.length;
+    }
+
+    public int getTriangleCount() {
+        return colors.length;
+    }
+
+    public float[] getX() {
+        return x;
+    }
+
+    public float[] getY() {
+        return y;
+    }
+
+    public float[] getZ() {
+        return z;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int[] getColors() {
+        return colors;
+    }
+
+    /**
+     * @return bounding volume hierarchy of the triangles, built (in parallel) by the first call
+     */
+    public BoundingVolumeHierarchy getHierarchy() {
+        BoundingVolumeHierarchy result = hierarchy;
+
+        if (result == null) {
+            synchronized (this) {
+                result = hierarchy;
+                if (result == null) {
+                    result = BoundingVolumeHierarchy.build(this);
+                    hierarchy = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return simplified versions of the mesh from the finest to the coarsest one (see MeshSimplifier),
+     *         or null if they are not built yet
+     */
+    public List<LevelOfDetail> getLevelsOfDetail() {
+        return levelsOfDetail;
+    }
+
+    /**
+     * Starts building the levels of detail on a background thread (levels are simplified in parallel),
+     * unless they are built or being built already
+     * @return future completed with the levels of detail once getLevelsOfDetail returns them
+     */
+    public synchronized CompletableFuture<List<LevelOfDetail>> buildLevelsOfDetail() {
+        if (levelsOfDetailBuild == null) {
+            List<LevelOfDetail> built = levelsOfDetail;
+            levelsOfDetailBuild = built != null ? CompletableFuture.completedFuture(built)
+                    : CompletableFuture.supplyAsync(() -> levelsOfDetail = List.copyOf(MeshSimplifier.buildLevelsOfDetail(this)));
+        }
+
+        return levelsOfDetailBuild;
+    }
+}
@@ -0,0 +1,13 @@
+package meshes;
+
+/**
+ * Simplified version of a mesh, see MeshSimplifier
+ * @param error largest distance (in object space) by which a vertex of the level may be moved from the surface of the full mesh
+ */
+public record LevelOfDetail(IndexedMesh mesh, float error) {
+    public LevelOfDetail {
+        if (!(error >= 0)) {
+            throw new IllegalArgumentException("Error of a level of detail should be non-negative");
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package meshes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Builds levels of detail of a mesh by vertex clustering with quadric error metrics (Lindstrom, "Out-of-core
+ * simplification of large polygonal models"): the bounding box of the mesh is divided into a grid of cubic cells,
+ * vertices of a cell are merged into one, and triangles having two vertices in the same cell collapse and are removed.
+ * Triangles which end up with the same three merged vertices in the same winding are drawn once; the opposite facing
+ * ones are kept, since a thin part folded onto one surface would otherwise disappear from one side when faces are culled.
+ * <p>
+ * Merged vertex is placed where the sum of squared distances to the planes of the triangles around the cell
+ * (the quadric of the cell) is the smallest, so sharp edges and corners are kept. Where that point is not
+ * well-defined (flat or cylindrical parts) or lies outside the cell, the average of the vertices of the cell is used.
+ * Every level is built from the full mesh independently of the others, so levels are built in parallel.
+ */
+public final class MeshSimplifier {
+    // Cells along the longest side of the bounding box of the finest level, every next level halves it
+    private static final int MAX_GRID_RESOLUTION = 1024;
+    private static final int MIN_GRID_RESOLUTION = 4;
+    // Levels of fewer triangles are not built, they are cheap to draw anyway
+    private static final int MIN_TRIANGLES = 1024;
+    // Determinant of the quadric (relative to the cube of its trace) below which the optimal point is not used
+    private static final double SINGULAR_DETERMINANT = 1e-3;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * @return levels of detail from the finest to the coarsest one, every level has at most half the triangles
+     *         of the previous one (or of the mesh), empty if the mesh is too small to be simplified
+     */
+    public static List<LevelOfDetail> buildLevelsOfDetail(IndexedMesh mesh) {
+        List<LevelOfDetail> levels = new ArrayList<>();
+        if (mesh.getTriangleCount() < 2 * MIN_TRIANGLES) {
+            return levels;
+        }
+
+        int levelCount = Integer.numberOfTrailingZeros(MAX_GRID_RESOLUTION / MIN_GRID_RESOLUTION) + 1;
+        LevelOfDetail[] candidates = IntStream.range(0, levelCount).parallel()
+                .mapToObj(level -> simplify(mesh, MAX_GRID_RESOLUTION >> level))
+                .toArray(LevelOfDetail[]::new);
+
+        int triangleCount = mesh.getTriangleCount();
+        for (LevelOfDetail candidate : candidates) {
+            int candidateCount = candidate.mesh().getTriangleCount();
+            if (candidateCount < MIN_TRIANGLES) {
+                break;
+            }
+            if (candidateCount <= triangleCount / 2) {
+                levels.add(candidate);
+                triangleCount = candidateCount;
+            }
+        }
+
+        // Hierarchies are built here as well, so that the first frame drawing a level does not wait for its hierarchy
+        levels.parallelStream().forEach(level -> level.mesh().getHierarchy());
+
+        return levels;
+    }
+
+    /**
+     * Simplifies the mesh by clustering its vertices into a grid
+     * @param gridResolution number of cells along the longest side of the bounding box
+     */
+    public static LevelOfDetail simplify(IndexedMesh mesh, int gridResolution) {
+        if (gridResolution < 1 || gridResolution > MAX_GRID_RESOLUTION) {
+            throw new IllegalArgumentException("Grid resolution should be between 1 and " + MAX_GRID_RESOLUTION);
+        }
+
+        float[] x = mesh.getX();
+        float[] y = mesh.getY();
+        float[] z = mesh.getZ();
+        int[] indices = mesh.getIndices();
+        int vertexCount = mesh.getVertexCount();
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < vertexCount; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+
+        double cellSize = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) / gridResolution;
+        if (vertexCount == 0 || cellSize == 0) {
+            return new LevelOfDetail(mesh, 0);
+        }
+
+        // Cell index in the high half, vertex index in the low one, sorting groups the vertices of every cell
+        double originX = minX, originY = minY, originZ = minZ;
+        long[] keys = new long[vertexCount];
+        IntStream.range(0, vertexCount).parallel().forEach(i -> {
+            long cellX = Math.min(gridResolution - 1, (long) ((x[i] - originX) / cellSize));
+            long cellY = Math.min(gridResolution - 1, (long) ((y[i] - originY) / cellSize));
+            long cellZ = Math.min(gridResolution - 1, (long) ((z[i] - originZ) / cellSize));
+            keys[i] = ((cellZ * gridResolution + cellY) * gridResolution + cellX) << 32 | i;
+        });
+        Arrays.parallelSort(keys);
+
+        int[] clusters = new int[vertexCount];
+        int clusterCount = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            if (i > 0 && keys[i] >>> 32 != keys[i - 1] >>> 32) {
+                clusterCount++;
+            }
+            clusters[(int) keys[i]] = clusterCount;
+        }
+        clusterCount++;
+
+        int[] simplifiedIndices = new int[indices.length];
+        int[] simplifiedColors = new int[mesh.getTriangleCount()];
+        int triangleCount = 0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int c0 = clusters[indices[t * 3]];
+            int c1 = clusters[indices[t * 3 + 1]];
+            int c2 = clusters[indices[t * 3 + 2]];
+
+            if (c0 != c1 && c1 != c2 && c2 != c0) {
+                simplifiedIndices[triangleCount * 3] = c0;
+                simplifiedIndices[triangleCount * 3 + 1] = c1;
+                simplifiedIndices[triangleCount * 3 + 2] = c2;
+                simplifiedColors[triangleCount] = mesh.getColors()[t];
+                triangleCount++;
+            }
+        }
+        triangleCount = removeDuplicates(simplifiedIndices, simplifiedColors, triangleCount);
+
+        double[] quadrics = getClusterQuadrics(mesh, clusters, clusterCount);
+
+        double[] sums = new double[clusterCount * 4];
+        for (int i = 0; i < vertexCount; i++) {
+            int offset = clusters[i] * 4;
+            sums[offset] += x[i];
+            sums[offset + 1] += y[i];
+            sums[offset + 2] += z[i];
+            sums[offset + 3]++;
+        }
+
+        float[] simplifiedX = new float[clusterCount];
+        float[] simplifiedY = new float[clusterCount];
+        float[] simplifiedZ = new float[clusterCount];
+        double[] position = new double[3];
+
+        for (int c = 0; c < clusterCount; c++) {
+            double count = sums[c * 4 + 3];
+            double averageX = sums[c * 4] / count;
+            double averageY = sums[c * 4 + 1] / count;
+            double averageZ = sums[c * 4 + 2] / count;
+
+            // Cell of the cluster grown by half a cell, the optimal point outside it is most likely far from the surface
+            double cellMinX = originX + (Math.floor((averageX - originX) / cellSize) - 0.5) * cellSize;
+            double cellMinY = originY + (Math.floor((averageY - originY) / cellSize) - 0.5) * cellSize;
+            double cellMinZ = originZ + (Math.floor((averageZ - originZ) / cellSize) - 0.5) * cellSize;
+
+            if (getOptimalPoint(quadrics, c * 10, position)
+                    && position[0] >= cellMinX && position[0] <= cellMinX + 2 * cellSize
+                    && position[1] >= cellMinY && position[1] <= cellMinY + 2 * cellSize
+                    && position[2] >= cellMinZ && position[2] <= cellMinZ + 2 * cellSize) {
+                simplifiedX[c] = (float) position[0];
+                simplifiedY[c] = (float) position[1];
+                simplifiedZ[c] = (float) position[2];
+            } else {
+                simplifiedX[c] = (float) averageX;
+                simplifiedY[c] = (float) averageY;
+                simplifiedZ[c] = (float) averageZ;
+            }
+        }
+
+        IndexedMesh simplified = new IndexedMesh(simplifiedX, simplifiedY, simplifiedZ,
+                Arrays.copyOf(simplifiedIndices, triangleCount * 3), Arrays.copyOf(simplifiedColors, triangleCount));
+
+        // Vertex stays within its cell grown by half a cell, i.e. within two cell diagonals of the original vertices
+        return new LevelOfDetail(simplified, (float) (2 * Math.sqrt(3) * cellSize));
+    }
+
+    /**
+     * Removes triangles having the same vertices in the same winding as an earlier one, the first of them is kept.
+     * Triangles are moved to the front keeping their order.
+     * @return number of the remaining triangles
+     */
+    private static int removeDuplicates(int[] indices, int[] colors, int triangleCount) {
+        // Open hash table of the kept triangles by their rotated vertices, every slot holds the triangle index + 1, 0 - empty
+        int slots = Integer.highestOneBit(Math.max(1, triangleCount) * 2 - 1) << 1;
+        int[] table = new int[slots];
+        int[] rotated = new int[3];
+        int keptCount = 0;
+
+        for (int t = 0; t < triangleCount; t++) {
+            rotateVertices(indices, t, rotated);
+            int a = rotated[0], b = rotated[1], c = rotated[2];
+
+            int slot = hash(a, b, c) & (slots - 1);
+            boolean duplicate = false;
+            for (; table[slot] != 0; slot = (slot + 1) & (slots - 1)) {
+                rotateVertices(indices, table[slot] - 1, rotated);
+                if (rotated[0] == a && rotated[1] == b && rotated[2] == c) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (duplicate) {
+                continue;
+            }
+
+            indices[keptCount * 3] = indices[t * 3];
+            indices[keptCount * 3 + 1] = indices[t * 3 + 1];
+            indices[keptCount * 3 + 2] = indices[t * 3 + 2];
+            colors[keptCount] = colors[t];
+            table[slot] = ++keptCount;
+        }
+
+        return keptCount;
+    }
+
+    /**
+     * Rotates the vertices of the triangle so that the smallest index comes first, the winding is kept
+     */
+    private static void rotateVertices(int[] indices, int triangle, int[] rotated) {
+        int a = indices[triangle * 3], b = indices[triangle * 3 + 1], c = indices[triangle * 3 + 2];
+        int first = a < b ? (a < c ? 0 : 2) : (b < c ? 1 : 2);
+        for (int k = 0; k < 3; k++) {
+            rotated[k] = indices[triangle * 3 + (first + k) % 3];
+        }
+    }
+
+    private static int hash(int a, int b, int c) {
+        long hash = a * 0x9E3779B97F4A7C15L + b * 0xC2B2AE3D27D4EB4FL + c * 0x165667B19E3779F9L;
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    /**
+     * Sums the quadrics of the planes of the triangles into the clusters of their vertices, every quadric is weighted
+     * by the area of the triangle. Quadric of the plane ax + by + cz + d = 0 (a unit normal) is the symmetric matrix
+     * (a, b, c, d)^T (a, b, c, d), stored as 10 values: aa, ab, ac, ad, bb, bc, bd, cc, cd, dd.
+     */
+    private static double[] getClusterQuadrics(IndexedMesh mesh, int[] clusters, int clusterCount) {
+        float[] x = mesh.getX();
+        float[] y = mesh.getY();
+        float[] z = mesh.getZ();
+        int[] indices = mesh.getIndices();
+        double[] quadrics = new double[clusterCount * 10];
+
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int i0 = indices[t * 3];
+            int i1 = indices[t * 3 + 1];
+            int i2 = indices[t * 3 + 2];
+
+            double e1x = x[i1] - x[i0], e1y = y[i1] - y[i0], e1z = z[i1] - z[i0];
+            double e2x = x[i2] - x[i0], e2y = y[i2] - y[i0], e2z = z[i2] - z[i0];
+            double nx = e1y * e2z - e1z * e2y;
+            double ny = e1z * e2x - e1x * e2z;
+            double nz = e1x * e2y - e1y * e2x;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                continue;
+            }
+
+            double a = nx / length, b = ny / length, c = nz / length;
+            double d = -(a * x[i0] + b * y[i0] + c * z[i0]);
+            double area = length / 2;
+
+            for (int k = 0; k < 3; k++) {
+                int offset = clusters[indices[t * 3 + k]] * 10;
+                quadrics[offset] += area * a * a;
+                quadrics[offset + 1] += area * a * b;
+                quadrics[offset + 2] += area * a * c;
+                quadrics[offset + 3] += area * a * d;
+                quadrics[offset + 4] += area * b * b;
+                quadrics[offset + 5] += area * b * c;
+                quadrics[offset + 6] += area * b * d;
+                quadrics[offset + 7] += area * c * c;
+                quadrics[offset + 8] += area * c * d;
+                quadrics[offset + 9] += area * d * d;
+            }
+        }
+
+        return quadrics;
+    }
+
+    /**
+     * Finds the point minimizing the quadric, i.e. solves A p = -b, where A is its upper left 3x3 block and b the rest
+     * of its last column (Cramer's rule)
+     * @return false if the point is not well-defined (the planes are nearly parallel or share a line)
+     */
+    private static boolean getOptimalPoint(double[] q, int offset, double[] point) {
+        double aa = q[offset], ab = q[offset + 1], ac = q[offset + 2], ad = q[offset + 3];
+        double bb = q[offset + 4], bc = q[offset + 5], bd = q[offset + 6];
+        double cc = q[offset + 7], cd = q[offset + 8];
+
+        double determinant = aa * (bb * cc - bc * bc) - ab * (ab * cc - bc * ac) + ac * (ab * bc - bb * ac);
+        double trace = aa + bb + cc;
+        if (trace == 0 || Math.abs(determinant) < SINGULAR_DETERMINANT * trace * trace * trace) {
+            return false;
+        }
+
+        point[0] = -(ad * (bb * cc - bc * bc) - ab * (bd * cc - bc * cd) + ac * (bd * bc - bb * cd)) / determinant;
+        point[1] = -(aa * (bd * cc - cd * bc) - ad * (ab * cc - bc * ac) + ac * (ab * cd - bd * ac)) / determinant;
+        point[2] = -(aa * (bb * cd - bc * bd) - ab * (ab * cd - bd * ac) + ad * (ab * bc - bb * ac)) / determinant;
+        return true;
+    }
+}
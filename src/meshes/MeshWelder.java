@@ -0,0 +1,207 @@
+package meshes;
+
+import java.util.Arrays;
+
+/**
+ * Merges duplicated vertices of a mesh and removes its degenerate triangles. Exported meshes often store a vertex
+ * once per face using it, every copy is then transformed separately each frame although they all give the same result.
+ * <p>
+ * Vertices closer than the weld distance are found with a spatial hash: the space is divided into cubic cells
+ * of the weld distance, so a vertex can only be close to the vertices of its own and the 26 neighbouring cells.
+ * Every vertex is replaced by the first vertex close to it (its position is kept, so with the distance of 0 only
+ * identical vertices are merged and the mesh looks exactly the same). Triangles of zero area (including the ones
+ * having two merged vertices) are removed, as well as vertices no triangle uses; the order of the rest is kept.
+ */
+public final class MeshWelder {
+    /**
+     * @param mesh welded mesh, the same as the source if nothing was removed
+     */
+    public record Result(IndexedMesh mesh, int verticesRemoved, int trianglesRemoved) {
+        /**
+         * @return bytes of vertex positions, indices and colors saved (the hierarchy of the mesh is smaller as well)
+         */
+        public long getBytesSaved() {
+            return 3L * Float.BYTES * verticesRemoved + 4L * Integer.BYTES * trianglesRemoved;
+        }
+
+        /**
+         * @return vertex transforms saved every frame when the whole mesh is in view
+         */
+        public int getTransformsSaved() {
+            return verticesRemoved;
+        }
+    }
+
+    private MeshWelder() {
+    }
+
+    /**
+     * @param distance vertices closer than or at this distance are merged, 0 - only identical vertices are
+     */
+    public static Result weld(IndexedMesh mesh, float distance) {
+        if (!(distance >= 0)) {
+            throw new IllegalArgumentException("Weld distance should be non-negative");
+        }
+
+        float[] x = mesh.getX();
+        float[] y = mesh.getY();
+        float[] z = mesh.getZ();
+        int[] indices = mesh.getIndices();
+        int vertexCount = mesh.getVertexCount();
+
+        int[] representatives = getRepresentatives(x, y, z, distance);
+        boolean merged = false;
+        for (int i = 0; i < vertexCount && !merged; i++) {
+            merged = representatives[i] != i;
+        }
+
+        // Triangles which do not collapse, vertices are replaced by their representatives.
+        // The arrays are only allocated once the first change is found, so a clean mesh needs no copies
+        int[] colors = mesh.getColors();
+        int[] weldedIndices = merged ? new int[indices.length] : null;
+        int[] weldedColors = merged ? new int[mesh.getTriangleCount()] : null;
+        boolean[] used = new boolean[vertexCount];
+        int triangleCount = 0;
+
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int i0 = representatives[indices[t * 3]];
+            int i1 = representatives[indices[t * 3 + 1]];
+            int i2 = representatives[indices[t * 3 + 2]];
+
+            if (i0 == i1 || i1 == i2 || i2 == i0 || isDegenerate(x, y, z, i0, i1, i2)) {
+                if (weldedIndices == null) {
+                    // Triangles before the first removed one are kept as they are
+                    weldedIndices = Arrays.copyOf(indices, indices.length);
+                    weldedColors = Arrays.copyOf(colors, colors.length);
+                }
+                continue;
+            }
+
+            if (weldedIndices != null) {
+                weldedIndices[triangleCount * 3] = i0;
+                weldedIndices[triangleCount * 3 + 1] = i1;
+                weldedIndices[triangleCount * 3 + 2] = i2;
+                weldedColors[triangleCount] = colors[t];
+            }
+            used[i0] = used[i1] = used[i2] = true;
+            triangleCount++;
+        }
+
+        int weldedVertexCount = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            if (used[i]) {
+                weldedVertexCount++;
+            }
+        }
+
+        if (weldedVertexCount == vertexCount && weldedIndices == null) {
+            return new Result(mesh, 0, 0);
+        } else if (weldedIndices == null) {
+            // Only unused vertices are removed
+            weldedIndices = Arrays.copyOf(indices, indices.length);
+            weldedColors = Arrays.copyOf(colors, colors.length);
+        }
+
+        // Used vertices are moved to the front keeping their order
+        int[] newIndices = new int[vertexCount];
+        float[] weldedX = new float[weldedVertexCount];
+        float[] weldedY = new float[weldedVertexCount];
+        float[] weldedZ = new float[weldedVertexCount];
+        for (int i = 0, j = 0; i < vertexCount; i++) {
+            if (used[i]) {
+                newIndices[i] = j;
+                weldedX[j] = x[i];
+                weldedY[j] = y[i];
+                weldedZ[j] = z[i];
+                j++;
+            }
+        }
+
+        weldedIndices = triangleCount * 3 == weldedIndices.length ? weldedIndices : Arrays.copyOf(weldedIndices, triangleCount * 3);
+        for (int i = 0; i < weldedIndices.length; i++) {
+            weldedIndices[i] = newIndices[weldedIndices[i]];
+        }
+        weldedColors = triangleCount == weldedColors.length ? weldedColors : Arrays.copyOf(weldedColors, triangleCount);
+
+        IndexedMesh welded = new IndexedMesh(weldedX, weldedY, weldedZ, weldedIndices, weldedColors);
+        return new Result(welded, vertexCount - weldedVertexCount, mesh.getTriangleCount() - triangleCount);
+    }
+
+    /**
+     * @return index of the vertex which replaces every vertex, the first vertex within the distance from it
+     */
+    private static int[] getRepresentatives(float[] x, float[] y, float[] z, float distance) {
+        int vertexCount = x.length;
+        int[] representatives = new int[vertexCount];
+
+        // Open hash table of cells: every slot holds a list of representatives (linked by next) of the cells hashed to it
+        int slots = Integer.highestOneBit(Math.max(1, vertexCount) * 2 - 1) << 1;
+        int[] heads = new int[slots];
+        Arrays.fill(heads, -1);
+        int[] next = new int[vertexCount];
+
+        double distanceSquared = (double) distance * distance;
+        int reach = distance > 0 ? 1 : 0; // Identical vertices are always in the same cell
+
+        for (int i = 0; i < vertexCount; i++) {
+            long cellX = getCell(x[i], distance);
+            long cellY = getCell(y[i], distance);
+            long cellZ = getCell(z[i], distance);
+            int representative = -1;
+
+            search:
+            for (long dx = -reach; dx <= reach; dx++) {
+                for (long dy = -reach; dy <= reach; dy++) {
+                    for (long dz = -reach; dz <= reach; dz++) {
+                        int slot = hash(cellX + dx, cellY + dy, cellZ + dz) & (slots - 1);
+
+                        for (int j = heads[slot]; j != -1; j = next[j]) {
+                            double ex = x[j] - x[i], ey = y[j] - y[i], ez = z[j] - z[i];
+                            if (ex * ex + ey * ey + ez * ez <= distanceSquared) {
+                                representative = j;
+                                break search;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (representative == -1) {
+                representative = i;
+                int slot = hash(cellX, cellY, cellZ) & (slots - 1);
+                next[i] = heads[slot];
+                heads[slot] = i;
+            }
+            representatives[i] = representative;
+        }
+
+        return representatives;
+    }
+
+    /**
+     * @return cell of the coordinate, or the coordinate itself (its bits) if only identical vertices are welded
+     */
+    private static long getCell(float coordinate, float distance) {
+        if (distance == 0) {
+            return coordinate == 0 ? 0 : Float.floatToIntBits(coordinate); // -0 and 0 are the same position
+        }
+        return (long) Math.floor(coordinate / distance);
+    }
+
+    private static int hash(long cellX, long cellY, long cellZ) {
+        long hash = cellX * 0x9E3779B97F4A7C15L + cellY * 0xC2B2AE3D27D4EB4FL + cellZ * 0x165667B19E3779F9L;
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    /**
+     * @return true if the vertices are on one line, i.e. the triangle has zero area
+     */
+    private static boolean isDegenerate(float[] x, float[] y, float[] z, int i0, int i1, int i2) {
+        double e1x = x[i1] - x[i0], e1y = y[i1] - y[i0], e1z = z[i1] - z[i0];
+        double e2x = x[i2] - x[i0], e2y = y[i2] - y[i0], e2z = z[i2] - z[i0];
+
+        return e1y * e2z - e1z * e2y == 0 && e1z * e2x - e1x * e2z == 0 && e1x * e2y - e1y * e2x == 0;
+    }
+}
@@ -0,0 +1,376 @@
+package parsers;
+
+import meshes.BoundingVolumeHierarchy;
+import meshes.IndexedMesh;
+import meshes.LevelOfDetail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary cache of parsed meshes, stored next to the source file (model.obj -> model.obj.mesh).
+ * <p>
+ * Format (little-endian): header of magic, format version, source file size and modification time, and the settings
+ * of the parser which built the mesh (flags of welding and vertex cache optimization, weld distance); then the number
+ * of levels of detail of the mesh (-1 if they were not built), every level as its error followed by its mesh,
+ * and the mesh itself. Every mesh is stored as vertex count, index count and hierarchy leaf size; then x, y and z float arrays,
+ * int index array, int RGB color of every triangle, float bounding boxes of the hierarchy nodes and int triangle order
+ * of the hierarchy (see BoundingVolumeHierarchy, its tree shape depends only on the number of triangles and the leaf size).
+ * Cache is valid only while the size and modification time of the source file and the settings of the parser
+ * match the ones in the header.
+ * <p>
+ * The file is mapped in windows of at most MAX_WINDOW_SIZE, since a single mapped buffer cannot exceed 2 GiB.
+ */
+public class MeshCache {
+    private static final int MAGIC = 0x4D443344; // "D3DM" in little-endian bytes
+    private static final int VERSION = 6;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int WELDING = 1;
+    private static final int VERTEX_CACHE_OPTIMIZATION = 2;
+    private static final int MESH_HEADER_SIZE = 4 + 4 + 4;
+    private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    /**
+     * Reads the mesh from the cache if it is up to date, otherwise parses the source file and caches the result.
+     */
+    public static IndexedMesh load(File source, OBJParser parser) {
+        IndexedMesh mesh = read(source, parser);
+
+        if (mesh == null) {
+            mesh = parser.parse(source);
+            write(source, mesh, parser);
+        }
+
+        return mesh;
+    }
+
+    public static File getCacheFile(File source) {
+        return new File(source.getPath() + ".mesh");
+    }
+
+    /**
+     * @param parser parser which would parse the source, the cache is used only if it was built with the same settings
+     * @return cached mesh (with its levels of detail, if they were cached) or null if there is no cache,
+     *         or it is outdated, built with other settings or corrupted
+     */
+    public static IndexedMesh read(File source, OBJParser parser) {
+        File cacheFile = getCacheFile(source);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+
+            MappedFile buffer = new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != source.length() || buffer.getLong() != getModificationTime(source)
+                    || buffer.getInt() != getFlags(parser) || Float.floatToIntBits(buffer.getFloat()) != Float.floatToIntBits(parser.getWeldDistance())) {
+                return null;
+            }
+
+            if (buffer.remaining() < 4) {
+                return null;
+            }
+
+            int levelCount = buffer.getInt();
+            List<LevelOfDetail> levels = null;
+            if (levelCount >= 0) {
+                levels = new ArrayList<>(Math.min(levelCount, 64));
+                for (int i = 0; i < levelCount; i++) {
+                    if (buffer.remaining() < 4) {
+                        return null;
+                    }
+
+                    float error = buffer.getFloat();
+                    IndexedMesh level = readMesh(buffer, null);
+                    if (level == null) {
+                        return null;
+                    }
+                    levels.add(new LevelOfDetail(level, error));
+                }
+            } else if (levelCount != -1) {
+                return null;
+            }
+
+            IndexedMesh mesh = readMesh(buffer, levels);
+            return mesh == null || buffer.remaining() > 0 ? null : mesh;
+        } catch (IOException | IllegalArgumentException e) {
+            return null; // Broken cache is the same as no cache, the source is parsed again
+        }
+    }
+
+    /**
+     * Reads a mesh starting at the position of the buffer and moves the position to its end
+     * @return the mesh or null if the sizes are wrong
+     */
+    private static IndexedMesh readMesh(MappedFile buffer, List<LevelOfDetail> levelsOfDetail) throws IOException {
+        if (buffer.remaining() < MESH_HEADER_SIZE) {
+            return null;
+        }
+
+        int vertexCount = buffer.getInt();
+        int indexCount = buffer.getInt();
+        int leafSize = buffer.getInt();
+        if (vertexCount < 0 || indexCount < 0 || indexCount % 3 != 0 || leafSize < 1
+                || buffer.remaining() < getSize(vertexCount, indexCount, leafSize) - MESH_HEADER_SIZE) {
+            return null;
+        }
+
+        float[] x = new float[vertexCount];
+        float[] y = new float[vertexCount];
+        float[] z = new float[vertexCount];
+        int[] indices = new int[indexCount];
+        int[] colors = new int[indexCount / 3];
+        float[] bounds = new float[6 * BoundingVolumeHierarchy.getNodeCount(indexCount / 3, leafSize)];
+        int[] triangles = new int[indexCount / 3];
+
+        buffer.get(x);
+        buffer.get(y);
+        buffer.get(z);
+        buffer.get(indices);
+        buffer.get(colors);
+        buffer.get(bounds);
+        buffer.get(triangles);
+
+        return new IndexedMesh(x, y, z, indices, colors, new BoundingVolumeHierarchy(leafSize, bounds, triangles), levelsOfDetail);
+    }
+
+    /**
+     * Writes the mesh, its levels of detail (if they are built) and their hierarchies (built if they were not yet)
+     * into the cache file of the source, the cache file is replaced atomically.
+     * @param parser parser which built the mesh (or read it from the cache), its settings are stored in the header
+     * @return true - if the cache was written, false - if it could not be (e.g. the directory is read-only)
+     */
+    public static boolean write(File source, IndexedMesh mesh, OBJParser parser) {
+        Path cachePath = getCacheFile(source).toPath().toAbsolutePath();
+        Path temporaryPath = null;
+
+        List<LevelOfDetail> levels = mesh.getLevelsOfDetail();
+        long size = HEADER_SIZE + 4 + getSize(mesh);
+        if (levels != null) {
+            for (LevelOfDetail level : levels) {
+                size += 4 + getSize(level.mesh());
+            }
+        }
+
+        try {
+            // Every writer has its own temporary file, e.g. the one writing levels of detail and the one of a second open
+            temporaryPath = Files.createTempFile(cachePath.getParent(), cachePath.getFileName() + ".", ".tmp");
+
+            try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedFile buffer = new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size);
+
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putLong(source.length());
+                buffer.putLong(getModificationTime(source));
+                buffer.putInt(getFlags(parser));
+                buffer.putFloat(parser.getWeldDistance());
+
+                buffer.putInt(levels == null ? -1 : levels.size());
+                if (levels != null) {
+                    for (LevelOfDetail level : levels) {
+                        buffer.putFloat(level.error());
+                        writeMesh(buffer, level.mesh());
+                    }
+                }
+                writeMesh(buffer, mesh);
+
+                buffer.force();
+            }
+
+            Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            try {
+                if (temporaryPath != null) {
+                    Files.deleteIfExists(temporaryPath);
+                }
+            } catch (IOException ignored) {
+                // Nothing else can be done, the leftover stays next to the cache
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Writes the mesh starting at the position of the buffer and moves the position to its end
+     */
+    private static void writeMesh(MappedFile buffer, IndexedMesh mesh) throws IOException {
+        int vertexCount = mesh.getVertexCount();
+        int indexCount = mesh.getIndices().length;
+        BoundingVolumeHierarchy hierarchy = mesh.getHierarchy();
+
+        buffer.putInt(vertexCount);
+        buffer.putInt(indexCount);
+        buffer.putInt(hierarchy.getLeafSize());
+
+        buffer.put(mesh.getX());
+        buffer.put(mesh.getY());
+        buffer.put(mesh.getZ());
+        buffer.put(mesh.getIndices());
+        buffer.put(mesh.getColors());
+        buffer.put(hierarchy.getBounds());
+        buffer.put(hierarchy.getTriangles());
+    }
+
+    private static long getSize(IndexedMesh mesh) {
+        return getSize(mesh.getVertexCount(), mesh.getIndices().length, mesh.getHierarchy().getLeafSize());
+    }
+
+    /**
+     * @return size of a stored mesh, including its vertex count, index count and leaf size
+     */
+    private static long getSize(int vertexCount, int indexCount, int leafSize) {
+        int triangleCount = indexCount / 3;
+        long hierarchySize = 6L * BoundingVolumeHierarchy.getNodeCount(triangleCount, leafSize) + triangleCount;
+        return MESH_HEADER_SIZE + 4L * (3L * vertexCount + indexCount + triangleCount + hierarchySize);
+    }
+
+    private static int getFlags(OBJParser parser) {
+        return (parser.isWelding() ? WELDING : 0) | (parser.isVertexCacheOptimization() ? VERTEX_CACHE_OPTIMIZATION : 0);
+    }
+
+    private static long getModificationTime(File file) throws IOException {
+        return Files.getLastModifiedTime(file.toPath()).toMillis();
+    }
+
+    /**
+     * Sequential reads or writes of a file through mapped windows, every window is mapped when the previous one
+     * has fewer bytes left than the next value needs. Arrays are copied in parts spanning the windows.
+     */
+    private static class MappedFile {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long size;
+
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        /**
+         * @param size size of the file, it grows to that size while written
+         */
+        MappedFile(FileChannel channel, FileChannel.MapMode mode, long size) {
+            this.channel = channel;
+            this.mode = mode;
+            this.size = size;
+        }
+
+        long remaining() {
+            return size - getPosition();
+        }
+
+        int getInt() throws IOException {
+            return getWindow(4).getInt();
+        }
+
+        long getLong() throws IOException {
+            return getWindow(8).getLong();
+        }
+
+        float getFloat() throws IOException {
+            return getWindow(4).getFloat();
+        }
+
+        void get(int[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                ByteBuffer buffer = getWindow(4);
+                int length = Math.min(values.length - offset, buffer.remaining() / 4);
+                buffer.asIntBuffer().get(values, offset, length);
+                buffer.position(buffer.position() + 4 * length);
+                offset += length;
+            }
+        }
+
+        void get(float[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                ByteBuffer buffer = getWindow(4);
+                int length = Math.min(values.length - offset, buffer.remaining() / 4);
+                buffer.asFloatBuffer().get(values, offset, length);
+                buffer.position(buffer.position() + 4 * length);
+                offset += length;
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            getWindow(4).putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            getWindow(8).putLong(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            getWindow(4).putFloat(value);
+        }
+
+        void put(int[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                ByteBuffer buffer = getWindow(4);
+                int length = Math.min(values.length - offset, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, offset, length);
+                buffer.position(buffer.position() + 4 * length);
+                offset += length;
+            }
+        }
+
+        void put(float[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                ByteBuffer buffer = getWindow(4);
+                int length = Math.min(values.length - offset, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, offset, length);
+                buffer.position(buffer.position() + 4 * length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Writes the changes of the current window to the storage
+         */
+        void force() {
+            if (window != null) {
+                window.force();
+            }
+        }
+
+        private long getPosition() {
+            return window == null ? 0 : windowStart + window.position();
+        }
+
+        /**
+         * @return window having at least the given number of bytes left
+         */
+        private ByteBuffer getWindow(int bytes) throws IOException {
+            if (window == null || window.remaining() < bytes) {
+                long position = getPosition();
+                if (size - position < bytes) {
+                    throw new EOFException("Unexpected end of the cache file");
+                }
+
+                if (mode == FileChannel.MapMode.READ_WRITE) {
+                    force(); // Changes of the previous window are written before it is replaced
+                }
+                window = channel.map(mode, position, Math.min(MAX_WINDOW_SIZE, size - position));
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                windowStart = position;
+            }
+
+            return window;
+        }
+    }
+}
@@ -1,55 +1,600 @@
 package parsers;
 
-import maths.Triangle;
-import maths.Vector3;
+import meshes.IndexedMesh;
+import meshes.MeshWelder;
+import meshes.VertexCacheOptimizer;
 
-import java.awt.*;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
+/**
+ * Parser of Wavefront .obj files. Only vertex positions (v) and faces (f) are read, polygonal faces are triangulated as fans.
+ * Files are tokenized byte by byte, numbers are parsed without creating Strings and written straight into primitive arrays.
+ * Small files are streamed through a fixed size buffer, large ones are memory-mapped and parsed in parallel chunks.
+ * Duplicated vertices and degenerate triangles of the parsed mesh are removed by MeshWelder, see getLastWeld,
+ * then triangles and vertices are reordered for locality by VertexCacheOptimizer. Both passes copy the mesh
+ * (welding only if it changes anything) and can be disabled, when the peak memory matters more.
+ */
 public class OBJParser {
-    public ArrayList<Triangle> parse(File file) {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Files starting from this size are parsed in parallel
+    private static final long PARALLEL_THRESHOLD = 16 << 20;
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 64 << 20;
+
+    private long lastParseTime;
+    private long lastParsedBytes;
+
+    private boolean welding = true;
+    // Vertices closer than that are merged, 0 - only identical ones
+    private float weldDistance = 0;
+    private MeshWelder.Result lastWeld;
+    private boolean vertexCacheOptimization = true;
+
+    public IndexedMesh parse(File file) {
         if (!file.getName().matches(".*\\.obj")) {
             throw new IllegalArgumentException("File format " + file.getName().substring(file.getName().lastIndexOf('.')) + " is not supported");
         }
 
-        ArrayList<Triangle> triangles = new ArrayList<>();
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            byte[] bytes = fileInputStream.readAllBytes();
-            String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\n");
+        IndexedMesh mesh = file.length() >= PARALLEL_THRESHOLD ? parseMapped(file) : parseStreamed(file);
+        lastWeld = null;
+        if (welding) {
+            lastWeld = MeshWelder.weld(mesh, weldDistance);
+            mesh = lastWeld.mesh();
+        }
+        return vertexCacheOptimization ? VertexCacheOptimizer.optimize(mesh) : mesh;
+    }
 
-            ArrayList<Vector3> vertices = new ArrayList<>();
-            for (String line : lines) {
-                if (line.matches("^v\\s+.*")) {
-                    String[] terms = line.split("\\s+");
-                    Vector3 v = new Vector3(Double.parseDouble(terms[1]), Double.parseDouble(terms[2]), Double.parseDouble(terms[3]));
-                    vertices.add(v);
-                }
+    /**
+     * Reads the file sequentially through a fixed size buffer
+     */
+    IndexedMesh parseStreamed(File file) {
+        long start = System.nanoTime();
+        MeshData meshData = new MeshData();
 
-                if (line.matches("^f\\s+.*")) {
-                    String[] terms = line.split("\\s+");
-                    int[] verticesIndexes = new int[3];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            boolean endOfFile = false;
 
-                    for (int i = 0; i < verticesIndexes.length; i++) {
-                        verticesIndexes[i] = Integer.parseInt(terms[i + 1].split("/")[0]);
-                    }
-                    // Because textures are not supported parser applies random color to each triangle
-                    triangles.add(new Triangle(vertices.get(verticesIndexes[0] - 1), vertices.get(verticesIndexes[1] - 1), vertices.get(verticesIndexes[2] - 1), getRandomColor()));
+            while (!endOfFile) {
+                endOfFile = channel.read(buffer) < 0;
+                buffer.flip();
+
+                // Only complete lines are parsed, the incomplete one is kept in the buffer till the next read
+                int linesEnd = endOfFile ? buffer.limit() : lastLineEnd(buffer);
+
+                if (linesEnd == 0 && !endOfFile && buffer.limit() == buffer.capacity()) {
+                    // The line does not fit into the buffer
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    larger.put(buffer);
+                    buffer = larger;
+                    continue;
                 }
+
+                meshData.parseLines(buffer, 0, linesEnd);
+                buffer.position(linesEnd);
+                buffer.compact();
+            }
+
+            lastParsedBytes = channel.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        IndexedMesh mesh = meshData.toMesh();
+        lastParseTime = System.nanoTime() - start;
+        return mesh;
+    }
+
+    /**
+     * Memory-maps the file and splits it into line aligned chunks which are parsed in parallel in two passes.
+     * The first pass counts vertices and triangle indices of every chunk, which gives the offset of each chunk in the
+     * resulting arrays; the second pass parses every chunk straight into its part of the arrays.
+     * The result is the same as of the sequential parse, and no memory besides the resulting arrays is needed.
+     */
+    IndexedMesh parseMapped(File file) {
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] boundaries = getChunkBoundaries(channel, size);
+            int chunks = boundaries.length - 1;
+
+            MappedByteBuffer[] buffers = new MappedByteBuffer[chunks];
+            for (int i = 0; i < chunks; i++) {
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, boundaries[i], boundaries[i + 1] - boundaries[i]);
             }
+
+            long[][] counts = new long[chunks][];
+            IntStream.range(0, chunks).parallel().forEach(i -> counts[i] = MeshData.count(buffers[i]));
+
+            int[] vertexOffsets = new int[chunks + 1];
+            int[] indexOffsets = new int[chunks + 1];
+            for (int i = 0; i < chunks; i++) {
+                vertexOffsets[i + 1] = Math.toIntExact(vertexOffsets[i] + counts[i][0]);
+                indexOffsets[i + 1] = Math.toIntExact(indexOffsets[i] + counts[i][1]);
+            }
+
+            float[] x = new float[vertexOffsets[chunks]];
+            float[] y = new float[vertexOffsets[chunks]];
+            float[] z = new float[vertexOffsets[chunks]];
+            int[] indices = new int[indexOffsets[chunks]];
+
+            IntStream.range(0, chunks).parallel().forEach(i -> {
+                MeshData meshData = new MeshData(x, y, z, vertexOffsets[i], indices, indexOffsets[i]);
+                meshData.parseLines(buffers[i], 0, buffers[i].limit());
+            });
+
+            int[] colors = new int[indices.length / 3];
+            Arrays.parallelSetAll(colors, OBJParser::getTriangleColor);
+
+            IndexedMesh mesh = new IndexedMesh(x, y, z, indices, colors);
+            lastParsedBytes = size;
+            lastParseTime = System.nanoTime() - start;
+            return mesh;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * Splits the file into chunks of roughly equal size, every chunk boundary is moved to the start of the next line
+     */
+    private static long[] getChunkBoundaries(FileChannel channel, long size) throws IOException {
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (4L * ForkJoinPool.getCommonPoolParallelism())));
+
+        ArrayList<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long boundary = chunkSize;
+        while (boundary < size) {
+            boundary = nextLineStart(channel, boundary, window);
+            if (boundary >= size) {
+                break;
+            }
+
+            boundaries.add(boundary);
+            boundary += chunkSize;
+        }
+        boundaries.add(size);
+
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer window) throws IOException {
+        while (true) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read < 0) {
+                return channel.size();
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private static int lastLineEnd(ByteBuffer buffer) {
+        for (int i = buffer.limit() - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return duration of the last parse in nanoseconds
+     */
+    public long getLastParseTime() {
+        return lastParseTime;
+    }
+
+    public boolean isWelding() {
+        return welding;
+    }
+
+    /**
+     * @param welding whether parsed meshes are welded by MeshWelder, otherwise they keep every vertex and triangle of the file
+     */
+    public void setWelding(boolean welding) {
+        this.welding = welding;
+    }
+
+    public float getWeldDistance() {
+        return weldDistance;
+    }
+
+    /**
+     * @param weldDistance vertices of parsed meshes closer than or at this distance are merged, 0 - only identical ones are
+     */
+    public void setWeldDistance(float weldDistance) {
+        if (!(weldDistance >= 0)) {
+            throw new IllegalArgumentException("Weld distance should be non-negative");
+        }
+        this.weldDistance = weldDistance;
+    }
+
+    public boolean isVertexCacheOptimization() {
+        return vertexCacheOptimization;
+    }
+
+    /**
+     * @param vertexCacheOptimization whether parsed meshes are reordered by VertexCacheOptimizer,
+     *                                otherwise triangles and vertices keep the order of the file
+     */
+    public void setVertexCacheOptimization(boolean vertexCacheOptimization) {
+        this.vertexCacheOptimization = vertexCacheOptimization;
+    }
+
+    /**
+     * @return vertices and triangles removed from the last parsed mesh, null if nothing was parsed yet
+     *         or it was parsed with welding disabled
+     */
+    public MeshWelder.Result getLastWeld() {
+        return lastWeld;
+    }
 
-        return triangles;
+    /**
+     * @return throughput of the last parse in megabytes (10^6 bytes) per second
+     */
+    public double getLastThroughput() {
+        return lastParseTime == 0 ? 0 : lastParsedBytes / 1e6 / (lastParseTime / 1e9);
     }
 
-    private static Color getRandomColor() {
-        Random random = new Random();
-        return new Color(random.nextFloat(1), random.nextFloat(1), random.nextFloat(1));
+    /**
+     * Because textures are not supported parser applies a color to each triangle.
+     * Colors look random but depend only on the triangle index, so parsing the same file twice gives the same mesh.
+     */
+    static int getTriangleColor(int triangle) {
+        int hash = triangle * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return 0xFF000000 | (hash & 0xFFFFFF);
+    }
+
+    /**
+     * Vertices and faces read so far, stored either in own growing arrays or in given parts of shared arrays.
+     */
+    static class MeshData {
+        // Powers of ten that are exactly representable as double
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private float[] x;
+        private float[] y;
+        private float[] z;
+        private int[] indices;
+
+        // Arrays are shared with other chunks of the file, which are written at other offsets, and cannot grow
+        private final boolean shared;
+        // Number of vertices (and indices) that precede this data in the file, vertices are stored after them
+        private final int vertexOffset;
+        private final int indexOffset;
+
+        private int vertexCount;
+        private int indexCount;
+
+        private int[] faceReferences = new int[16];
+
+        private ByteBuffer buffer;
+        private int position;
+        private int lineEnd;
+
+        MeshData() {
+            x = new float[1024];
+            y = new float[1024];
+            z = new float[1024];
+            indices = new int[3072];
+            shared = false;
+            vertexOffset = 0;
+            indexOffset = 0;
+        }
+
+        MeshData(float[] x, float[] y, float[] z, int vertexOffset, int[] indices, int indexOffset) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.indices = indices;
+            this.shared = true;
+            this.vertexOffset = vertexOffset;
+            this.indexOffset = indexOffset;
+        }
+
+        /**
+         * Counts what parseLines would read from the buffer without parsing numbers.
+         * @return number of vertices and number of triangle indices
+         */
+        static long[] count(ByteBuffer buffer) {
+            long vertices = 0;
+            long indices = 0;
+
+            int position = 0;
+            int to = buffer.limit();
+            while (position < to) {
+                int lineEnd = position;
+                while (lineEnd < to && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+
+                while (position < lineEnd && isBlank(buffer.get(position))) {
+                    position++;
+                }
+
+                if (position + 1 < lineEnd && isBlank(buffer.get(position + 1))) {
+                    if (buffer.get(position) == 'v') {
+                        vertices++;
+                    } else if (buffer.get(position) == 'f') {
+                        int references = 0;
+                        boolean inToken = false;
+                        for (int i = position + 1; i < lineEnd; i++) {
+                            boolean blank = isBlank(buffer.get(i));
+                            if (!blank && !inToken) {
+                                references++;
+                            }
+                            inToken = !blank;
+                        }
+                        indices += 3L * Math.max(0, references - 2);
+                    }
+                }
+
+                position = lineEnd + 1;
+            }
+
+            return new long[] {vertices, indices};
+        }
+
+        void parseLines(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            position = from;
+
+            while (position < to) {
+                lineEnd = position;
+                while (lineEnd < to && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+
+                parseLine();
+                position = lineEnd + 1;
+            }
+
+            this.buffer = null;
+        }
+
+        private void parseLine() {
+            skipBlanks();
+
+            if (position + 1 >= lineEnd || !isBlank(buffer.get(position + 1))) {
+                return;
+            }
+
+            byte keyword = buffer.get(position);
+            position++;
+
+            if (keyword == 'v') {
+                addVertex(nextFloat(), nextFloat(), nextFloat());
+            } else if (keyword == 'f') {
+                int references = 0;
+
+                skipBlanks();
+                while (position < lineEnd) {
+                    if (references == faceReferences.length) {
+                        faceReferences = Arrays.copyOf(faceReferences, references * 2);
+                    }
+                    faceReferences[references++] = nextVertexReference();
+                    skipBlanks();
+                }
+
+                if (references < 3) {
+                    throw new IllegalArgumentException("Face should have at least 3 vertices");
+                }
+
+                for (int i = 2; i < references; i++) {
+                    addIndex(faceReferences[0]);
+                    addIndex(faceReferences[i - 1]);
+                    addIndex(faceReferences[i]);
+                }
+            }
+        }
+
+        private void addVertex(float vx, float vy, float vz) {
+            if (!shared && vertexCount == x.length) {
+                x = Arrays.copyOf(x, vertexCount * 2);
+                y = Arrays.copyOf(y, vertexCount * 2);
+                z = Arrays.copyOf(z, vertexCount * 2);
+            }
+
+            x[vertexOffset + vertexCount] = vx;
+            y[vertexOffset + vertexCount] = vy;
+            z[vertexOffset + vertexCount] = vz;
+            vertexCount++;
+        }
+
+        /**
+         * @param reference one-based vertex number, or a negative number counted back from the last read vertex
+         */
+        private void addIndex(int reference) {
+            if (!shared && indexCount == indices.length) {
+                indices = Arrays.copyOf(indices, indexCount * 2);
+            }
+
+            if (reference > 0) {
+                indices[indexOffset + indexCount] = reference - 1;
+            } else if (reference < 0) {
+                // Relative to the last vertex read so far in the whole file
+                indices[indexOffset + indexCount] = vertexOffset + vertexCount + reference;
+            } else {
+                throw new IllegalArgumentException("Vertex reference cannot be zero");
+            }
+
+            indexCount++;
+        }
+
+        IndexedMesh toMesh() {
+            int[] colors = new int[indexCount / 3];
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = getTriangleColor(i);
+            }
+
+            return new IndexedMesh(
+                    Arrays.copyOf(x, vertexCount), Arrays.copyOf(y, vertexCount), Arrays.copyOf(z, vertexCount),
+                    Arrays.copyOf(indices, indexCount), colors);
+        }
+
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private void skipBlanks() {
+            while (position < lineEnd && isBlank(buffer.get(position))) {
+                position++;
+            }
+        }
+
+        private int tokenEnd(int from) {
+            int end = from;
+            while (end < lineEnd && !isBlank(buffer.get(end))) {
+                end++;
+            }
+            return end;
+        }
+
+        /**
+         * Reads the vertex number of a face vertex (v, v/vt, v//vn or v/vt/vn), texture and normal numbers are skipped
+         */
+        private int nextVertexReference() {
+            int start = position;
+            boolean negative = buffer.get(position) == '-';
+            if (negative) {
+                position++;
+            }
+
+            int value = 0;
+            boolean anyDigit = false;
+            while (position < lineEnd && isDigit(buffer.get(position))) {
+                value = value * 10 + (buffer.get(position) - '0');
+                anyDigit = true;
+                position++;
+            }
+
+            if (!anyDigit || (position < lineEnd && !isBlank(buffer.get(position)) && buffer.get(position) != '/')) {
+                throw new NumberFormatException("For input string: \"" + getString(start, tokenEnd(start)) + "\"");
+            }
+
+            position = tokenEnd(position);
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses a decimal number exactly as Double.parseDouble does (and then rounds it to float).
+         * Numbers with up to 15 significant digits and small exponents are parsed from the bytes directly,
+         * anything else falls back to Double.parseDouble.
+         */
+        private float nextFloat() {
+            skipBlanks();
+            int start = position;
+
+            boolean negative = false;
+            if (position < lineEnd && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                negative = buffer.get(position) == '-';
+                position++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean anyDigit = false;
+
+            while (position < lineEnd && isDigit(buffer.get(position))) {
+                mantissa = mantissa * 10 + (buffer.get(position) - '0');
+                digits += mantissa == 0 ? 0 : 1;
+                anyDigit = true;
+                position++;
+            }
+
+            if (position < lineEnd && buffer.get(position) == '.') {
+                position++;
+                while (position < lineEnd && isDigit(buffer.get(position))) {
+                    mantissa = mantissa * 10 + (buffer.get(position) - '0');
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                    anyDigit = true;
+                    position++;
+                }
+            }
+
+            if (anyDigit && position < lineEnd && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < lineEnd && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                    negativeExponent = buffer.get(position) == '-';
+                    position++;
+                }
+
+                int explicitExponent = 0;
+                boolean anyExponentDigit = false;
+                while (position < lineEnd && isDigit(buffer.get(position))) {
+                    explicitExponent = Math.min(explicitExponent * 10 + (buffer.get(position) - '0'), 1000);
+                    anyExponentDigit = true;
+                    position++;
+                }
+
+                anyDigit = anyExponentDigit;
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+
+            boolean exact = anyDigit && digits <= 15 && (position == lineEnd || isBlank(buffer.get(position)))
+                    && (mantissa == 0 || Math.abs(exponent) < POWERS_OF_TEN.length);
+
+            if (!exact) {
+                position = tokenEnd(start);
+                return (float) Double.parseDouble(getString(start, position));
+            }
+
+            // Both operands are exact, so a single correctly rounded operation gives the correctly rounded result
+            double value;
+            if (mantissa == 0) {
+                value = 0;
+            } else if (exponent >= 0) {
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            }
+
+            return (float) (negative ? -value : value);
+        }
+
+        private String getString(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
     }
 }
@@ -0,0 +1,115 @@
+package renderers;
+
+import cameras.PinholeRasterCamera;
+import meshes.IndexedMesh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders one mesh in many poses (turntables, thumbnails) on several threads at once.
+ * Every worker has its own Rasterizer, camera copy and frame buffer and renders whole frames serially,
+ * so workers share nothing but the mesh, which is only read.
+ */
+public class BatchRenderer {
+    /**
+     * Receives rendered frames. It is called on a worker thread, and the frame (see Rasterizer.getFrame and
+     * Rasterizer.getColorBuffer) is valid only until it returns, since the worker then renders its next pose into it.
+     */
+    @FunctionalInterface
+    public interface FrameConsumer {
+        void accept(int index, Pose pose, Rasterizer frame) throws Exception;
+    }
+
+    private final IndexedMesh mesh;
+    private final Rasterizer[] workers;
+
+    public BatchRenderer(PinholeRasterCamera camera, IndexedMesh mesh, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads should be positive");
+        }
+
+        this.mesh = mesh;
+        workers = new Rasterizer[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Rasterizer(new PinholeRasterCamera(camera));
+            workers[i].setParallelism(1);
+            workers[i].setObjectToPaint(mesh);
+        }
+    }
+
+    /**
+     * Renders every pose and passes the frames to the consumer. Frames are rendered concurrently,
+     * so the consumer is called in no particular order and should be safe to call from several threads.
+     * Calls from different threads are executed one after another.
+     */
+    public synchronized void render(List<Pose> poses, FrameConsumer consumer) {
+        if (poses.isEmpty()) {
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        int threads = Math.min(workers.length, poses.size());
+
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Rasterizer worker = workers[i];
+
+            tasks.add(() -> {
+                // Poses are taken one by one, so a worker which got cheaper frames renders more of them
+                for (int index = next.getAndIncrement(); index < poses.size(); index = next.getAndIncrement()) {
+                    Pose pose = poses.get(index);
+                    worker.setYaw(pose.yaw());
+                    worker.setPitch(pose.pitch());
+                    worker.setRoll(pose.roll());
+                    worker.render();
+
+                    try {
+                        consumer.accept(index, pose, worker);
+                    } catch (Exception e) {
+                        next.set(poses.size()); // Stop the other workers as well
+                        throw e;
+                    }
+                }
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies to the next batch, a batch being rendered is finished first
+     */
+    public synchronized void setCullMode(Rasterizer.CullMode cullMode) {
+        for (Rasterizer worker : workers) {
+            worker.setCullMode(cullMode);
+        }
+    }
+
+    public IndexedMesh getMesh() {
+        return mesh;
+    }
+
+    public int getThreads() {
+        return workers.length;
+    }
+}
@@ -0,0 +1,115 @@
+package renderers;
+
+/**
+ * Clips triangles against the planes of the view frustum in homogeneous clip space, i.e. before the perspective divide,
+ * where the visible volume is -w <= x <= w, -w <= y <= w, -w <= z <= w.
+ * Clipping in clip space handles vertices behind the camera (w <= 0), which cannot be divided by w.
+ * <p>
+ * Triangle clipped by k planes is a convex polygon of at most 3 + k vertices, which keeps the winding of the triangle.
+ */
+class Clipper {
+    // Outcode bits, a bit is set if the vertex is outside the plane
+    static final int NEAR = 1;
+    static final int FAR = 2;
+    static final int LEFT = 4;
+    static final int RIGHT = 8;
+    static final int BOTTOM = 16;
+    static final int TOP = 32;
+    static final int SIDES = LEFT | RIGHT | BOTTOM | TOP;
+
+    private static final int MAX_VERTICES = 3 + 6;
+
+    // Vertices of the polygon as x, y, z, w quadruples, clipping by each plane writes from one buffer into the other
+    private double[] polygon = new double[MAX_VERTICES * 4];
+    private double[] clipped = new double[MAX_VERTICES * 4];
+
+    static int getOutcode(double x, double y, double z, double w) {
+        int outcode = 0;
+
+        if (z < -w) outcode |= NEAR;
+        if (z > w) outcode |= FAR;
+        if (x < -w) outcode |= LEFT;
+        if (x > w) outcode |= RIGHT;
+        if (y < -w) outcode |= BOTTOM;
+        if (y > w) outcode |= TOP;
+
+        return outcode;
+    }
+
+    /**
+     * Clips the triangle by the given planes (Sutherland-Hodgman), vertices are taken from the array of x, y, z, w quadruples.
+     * @return number of vertices of the clipped polygon (0 if nothing is left), the vertices are available through getVertices
+     */
+    int clip(double[] vertices, int index0, int index1, int index2, int planes) {
+        System.arraycopy(vertices, index0 * 4, polygon, 0, 4);
+        System.arraycopy(vertices, index1 * 4, polygon, 4, 4);
+        System.arraycopy(vertices, index2 * 4, polygon, 8, 4);
+        int count = 3;
+
+        for (int plane = NEAR; plane <= TOP && count > 0; plane <<= 1) {
+            if ((planes & plane) != 0) {
+                count = clipByPlane(count, plane);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return x, y, z, w quadruples of the polygon produced by the last clip call
+     */
+    double[] getVertices() {
+        return polygon;
+    }
+
+    private int clipByPlane(int count, int plane) {
+        int clippedCount = 0;
+
+        double previousDistance = getDistance(polygon, count - 1, plane);
+        for (int i = 0, previous = count - 1; i < count; previous = i, i++) {
+            double distance = getDistance(polygon, i, plane);
+
+            if (distance >= 0 != previousDistance >= 0) {
+                // Edge crosses the plane, interpolation is linear in clip space
+                double t = previousDistance / (previousDistance - distance);
+                for (int c = 0; c < 4; c++) {
+                    clipped[clippedCount * 4 + c] = polygon[previous * 4 + c] + t * (polygon[i * 4 + c] - polygon[previous * 4 + c]);
+                }
+                clippedCount++;
+            }
+
+            if (distance >= 0) {
+                System.arraycopy(polygon, i * 4, clipped, clippedCount * 4, 4);
+                clippedCount++;
+            }
+
+            previousDistance = distance;
+        }
+
+        double[] tmp = polygon;
+        polygon = clipped;
+        clipped = tmp;
+
+        return clippedCount;
+    }
+
+    /**
+     * @return signed distance to the plane (up to a positive factor), non-negative inside the frustum
+     */
+    private static double getDistance(double[] vertices, int index, int plane) {
+        double x = vertices[index * 4];
+        double y = vertices[index * 4 + 1];
+        double z = vertices[index * 4 + 2];
+        double w = vertices[index * 4 + 3];
+
+        return switch (plane) {
+            case NEAR -> w + z;
+            case FAR -> w - z;
+            case LEFT -> w + x;
+            case RIGHT -> w - x;
+            case BOTTOM -> w + y;
+            case TOP -> w - y;
+            default -> throw new IllegalArgumentException("Unknown plane " + plane);
+        };
+    }
+}
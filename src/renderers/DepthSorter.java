@@ -0,0 +1,174 @@
+package renderers;
+
+import maths.Matrix4;
+import meshes.BoundingVolumeHierarchy;
+
+import java.util.Arrays;
+
+/**
+ * Orders clusters of triangles (leaves of the mesh hierarchy) front to back, so that the nearest triangles are filled
+ * first and the ones behind them fail the depth test (or the coarse depth test, see FrameBuffer) instead of being
+ * written and overwritten. Clusters are sorted rather than single triangles, since triangles of a cluster share
+ * vertices and are close in the mesh, which keeps the vertex transform and triangle setup cache friendly.
+ * <p>
+ * Sort key of a cluster is the clip space z of the nearest corner of its bounding box. Clip z is an affine function
+ * of the view space depth (for both perspective and orthographic projections), so this is the depth of the nearest
+ * corner. Clusters are sorted by a radix sort of the keys. The key is a linear function of the object space position,
+ * so the order depends only on the direction of that function, i.e. on the direction of view in object space.
+ * While it stays within MAX_REUSE_ANGLE of the direction of the last sort, the order of the last sort is reused:
+ * clusters which are still visible keep their places and newly visible ones are added after them.
+ */
+class DepthSorter {
+    // Order is sorted again once the direction of view turns by more than that
+    private static final double MAX_REUSE_ANGLE = Math.toRadians(3);
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    // Order of the last frame and the direction of view of the last sort
+    private int[] order = new int[0];
+    private int orderLength;
+    private BoundingVolumeHierarchy orderHierarchy;
+    private double directionX, directionY, directionZ;
+
+    // Keys and nodes of the radix sort and its histogram
+    private int[] keys = new int[0];
+    private int[] keysBuffer = new int[0];
+    private int[] nodesBuffer = new int[0];
+    private final int[] counts = new int[RADIX];
+
+    // marks[node] == mark if the node is visible in the current frame
+    private int[] marks = new int[0];
+    private int mark;
+
+    /**
+     * Reorders nodes[0, count) of the hierarchy front to back
+     * @param modelViewProjection matrix which transforms the mesh into clip space
+     * @return true - if the nodes were sorted, false - if the order of the previous frame was reused
+     */
+    boolean sort(BoundingVolumeHierarchy hierarchy, int[] nodes, int count, Matrix4 modelViewProjection) {
+        // Clip z is the dot product of the position with the third column of the matrix
+        double a = modelViewProjection.m02;
+        double b = modelViewProjection.m12;
+        double c = modelViewProjection.m22;
+        double length = Math.sqrt(a * a + b * b + c * c);
+
+        boolean reuse = hierarchy == orderHierarchy
+                && (a * directionX + b * directionY + c * directionZ) / length >= Math.cos(MAX_REUSE_ANGLE);
+        if (reuse) {
+            reuseOrder(hierarchy, nodes, count);
+        } else {
+            radixSort(hierarchy.getBounds(), nodes, count, a, b, c);
+            orderHierarchy = hierarchy;
+            directionX = a / length;
+            directionY = b / length;
+            directionZ = c / length;
+        }
+
+        if (order.length < count) {
+            order = new int[hierarchy.getNodeCount()];
+        }
+        System.arraycopy(nodes, 0, order, 0, count);
+        orderLength = count;
+
+        return !reuse;
+    }
+
+    private void reuseOrder(BoundingVolumeHierarchy hierarchy, int[] nodes, int count) {
+        if (marks.length < hierarchy.getNodeCount()) {
+            marks = new int[hierarchy.getNodeCount()];
+            mark = 0;
+        }
+        if (nodesBuffer.length < count) {
+            nodesBuffer = new int[hierarchy.getNodeCount()];
+        }
+
+        // Positive mark - visible and not placed yet, negative - placed
+        mark++;
+        for (int i = 0; i < count; i++) {
+            marks[nodes[i]] = mark;
+        }
+
+        int placed = 0;
+        for (int i = 0; i < orderLength; i++) {
+            int node = order[i];
+            if (marks[node] == mark) {
+                marks[node] = -mark;
+                nodesBuffer[placed++] = node;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int node = nodes[i];
+            if (marks[node] == mark) {
+                nodesBuffer[placed++] = node;
+            }
+        }
+
+        System.arraycopy(nodesBuffer, 0, nodes, 0, count);
+    }
+
+    /**
+     * Least significant digit first radix sort of the nodes by the key, stable, so equal keys keep the given order
+     * @param a, b, c coefficients of x, y and z in clip z (the constant term does not change the order)
+     */
+    private void radixSort(float[] bounds, int[] nodes, int count, double a, double b, double c) {
+        if (count == 0) {
+            return;
+        }
+        if (keys.length < count) {
+            keys = new int[count];
+            keysBuffer = new int[count];
+        }
+        if (nodesBuffer.length < count) {
+            nodesBuffer = new int[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            int offset = nodes[i] * 6;
+            double nearest = a * (a > 0 ? bounds[offset] : bounds[offset + 3])
+                    + b * (b > 0 ? bounds[offset + 1] : bounds[offset + 4])
+                    + c * (c > 0 ? bounds[offset + 2] : bounds[offset + 5]);
+
+            // Bits of a float flipped so that unsigned comparison of the keys is the same as comparison of the floats
+            int bits = Float.floatToIntBits((float) nearest);
+            keys[i] = bits ^ (bits >> 31 | Integer.MIN_VALUE);
+        }
+
+        int[] sourceKeys = keys, targetKeys = keysBuffer;
+        int[] source = nodes, target = nodesBuffer;
+
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[sourceKeys[i] >>> shift & (RADIX - 1)]++;
+            }
+
+            // Digit is the same for all keys (e.g. sign and exponent of close depths), nothing to reorder
+            if (counts[sourceKeys[0] >>> shift & (RADIX - 1)] == count) {
+                continue;
+            }
+
+            for (int digit = 0, offset = 0; digit < RADIX; digit++) {
+                int digitCount = counts[digit];
+                counts[digit] = offset;
+                offset += digitCount;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int position = counts[sourceKeys[i] >>> shift & (RADIX - 1)]++;
+                targetKeys[position] = sourceKeys[i];
+                target[position] = source[i];
+            }
+
+            int[] tmp = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = tmp;
+            tmp = source;
+            source = target;
+            target = tmp;
+        }
+
+        if (source != nodes) {
+            System.arraycopy(source, 0, nodes, 0, count);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package renderers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Color and depth buffers of a rendered image, stored as flat row-major arrays (index = y * width + x).
+ * Color buffer is the backing array of an RGB image, so pixels written into it can be drawn without copying.
+ * Buffers are reused between frames and reallocated only when the image size changes.
+ * <p>
+ * Depth buffer has a coarse level of square tiles, which keeps the largest depth of every tile (hierarchical Z),
+ * so that a triangle lying behind everything drawn in the tiles it touches can be rejected without testing its pixels.
+ * Tile maximum can only decrease when a depth is written, it is recalculated only when the last pixel having
+ * that depth is overwritten, see writeDepth.
+ */
+public class FrameBuffer {
+    // Z value of raster coordinates is the NDC depth between -1 and 1, where 1 is the distance to far clipping plane
+    public static final float FAR_DEPTH = 1;
+    // Side of a tile of the coarse depth level in pixels, divides the tile size of Rasterizer
+    // so that workers filling different parts of the image never share a depth tile
+    public static final int DEPTH_TILE_SIZE = 8;
+
+    private int width;
+    private int height;
+
+    private BufferedImage image;
+    private int[] color;
+    private float[] depth;
+
+    private int depthTilesX;
+    // Largest depth of the pixels of every tile and the number of its pixels which have it
+    private float[] tileMaxDepth;
+    private int[] tileMaxDepthCount;
+
+    /**
+     * Makes the buffers match the given image size.
+     * @return true - if the buffers had to be reallocated, false - if the existing ones were kept
+     */
+    public boolean resize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame buffer dimensions should be positive");
+        }
+
+        if (image != null && this.width == width && this.height == height) {
+            return false;
+        }
+
+        this.width = width;
+        this.height = height;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        color = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        depth = new float[width * height];
+
+        depthTilesX = (width + DEPTH_TILE_SIZE - 1) / DEPTH_TILE_SIZE;
+        int depthTilesY = (height + DEPTH_TILE_SIZE - 1) / DEPTH_TILE_SIZE;
+        tileMaxDepth = new float[depthTilesX * depthTilesY];
+        tileMaxDepthCount = new int[depthTilesX * depthTilesY];
+        return true;
+    }
+
+    public void clear(int rgb) {
+        Arrays.fill(color, rgb);
+        Arrays.fill(depth, FAR_DEPTH);
+        Arrays.fill(tileMaxDepth, FAR_DEPTH);
+
+        for (int tile = 0; tile < tileMaxDepthCount.length; tile++) {
+            int tileX = tile % depthTilesX * DEPTH_TILE_SIZE;
+            int tileY = tile / depthTilesX * DEPTH_TILE_SIZE;
+            tileMaxDepthCount[tile] = Math.min(DEPTH_TILE_SIZE, width - tileX) * Math.min(DEPTH_TILE_SIZE, height - tileY);
+        }
+    }
+
+    /**
+     * Writes the depth of the pixel keeping the coarse level up to date. The depth should be less than the current one.
+     */
+    public void writeDepth(int x, int y, float z) {
+        int index = y * width + x;
+        int tile = (y / DEPTH_TILE_SIZE) * depthTilesX + x / DEPTH_TILE_SIZE;
+        float previous = depth[index];
+        depth[index] = z;
+
+        if (previous == tileMaxDepth[tile] && --tileMaxDepthCount[tile] == 0) {
+            updateTileMaxDepth(tile);
+        }
+    }
+
+    private void updateTileMaxDepth(int tile) {
+        int xStart = tile % depthTilesX * DEPTH_TILE_SIZE;
+        int yStart = tile / depthTilesX * DEPTH_TILE_SIZE;
+        int xEnd = Math.min(xStart + DEPTH_TILE_SIZE, width);
+        int yEnd = Math.min(yStart + DEPTH_TILE_SIZE, height);
+
+        float max = Float.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int y = yStart; y < yEnd; y++) {
+            for (int x = xStart; x < xEnd; x++) {
+                float z = depth[y * width + x];
+
+                if (z > max) {
+                    max = z;
+                    count = 1;
+                } else if (z == max) {
+                    count++;
+                }
+            }
+        }
+
+        tileMaxDepth[tile] = max;
+        tileMaxDepthCount[tile] = count;
+    }
+
+    /**
+     * Coarse depth test of the rectangle [xStart, xEnd) x [yStart, yEnd) against the tiles it touches.
+     * @return true - if no pixel of the rectangle is farther than z, i.e. nothing at depth z or farther can pass the depth test there
+     */
+    public boolean isOccluded(int xStart, int yStart, int xEnd, int yEnd, float z) {
+        for (int tileY = yStart / DEPTH_TILE_SIZE; tileY <= (yEnd - 1) / DEPTH_TILE_SIZE; tileY++) {
+            for (int tileX = xStart / DEPTH_TILE_SIZE; tileX <= (xEnd - 1) / DEPTH_TILE_SIZE; tileX++) {
+                if (tileMaxDepth[tileY * depthTilesX + tileX] > z) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int[] getColor() {
+        return color;
+    }
+
+    public float[] getDepth() {
+        return depth;
+    }
+}
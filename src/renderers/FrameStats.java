@@ -0,0 +1,149 @@
+package renderers;
+
+/**
+ * Timings of the rendering pipeline stages (in nanoseconds) and triangle and pixel counters of a single frame.
+ * Collected by Rasterizer only while enabled (see Rasterizer.setStatsEnabled), the same object is reused every frame.
+ */
+public class FrameStats {
+    public enum Stage {
+        CLEAR, CULL, SORT, TRANSFORM, SETUP, FILL, OUTLINE, PRESENT
+    }
+
+    private final long[] stageTimes = new long[Stage.values().length];
+
+    long levelOfDetail;
+    long trianglesSubmitted;
+    long trianglesOffScreen;
+    long clustersSorted;
+    long trianglesClipped;
+    long trianglesCulled;
+    long trianglesDrawn;
+
+    long pixelsTested;
+    long pixelsDepthPassed;
+    long pixelsOccluded;
+    long pixelsCovered;
+
+    void reset() {
+        for (int i = 0; i < stageTimes.length; i++) {
+            if (i != Stage.PRESENT.ordinal()) {
+                stageTimes[i] = 0; // Present of the previous frame happens after it is rendered, so it is kept
+            }
+        }
+
+        levelOfDetail = 0;
+        trianglesSubmitted = 0;
+        trianglesOffScreen = 0;
+        clustersSorted = 0;
+        trianglesClipped = 0;
+        trianglesCulled = 0;
+        trianglesDrawn = 0;
+
+        pixelsTested = 0;
+        pixelsDepthPassed = 0;
+        pixelsOccluded = 0;
+        pixelsCovered = 0;
+    }
+
+    void setStageTime(Stage stage, long nanoseconds) {
+        stageTimes[stage.ordinal()] = nanoseconds;
+    }
+
+    synchronized void addPixels(long tested, long depthPassed, long occluded) {
+        pixelsTested += tested;
+        pixelsDepthPassed += depthPassed;
+        pixelsOccluded += occluded;
+    }
+
+    public long getStageTime(Stage stage) {
+        return stageTimes[stage.ordinal()];
+    }
+
+    /**
+     * @return number of the drawn level of detail of the mesh starting from 1, 0 if the full mesh was drawn
+     *         (see Rasterizer.setLevelOfDetail)
+     */
+    public long getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /**
+     * @return triangles of the mesh (or of its level of detail) sent to the pipeline
+     */
+    public long getTrianglesSubmitted() {
+        return trianglesSubmitted;
+    }
+
+    /**
+     * @return triangles rejected because they (or their whole hierarchy node, see meshes.BoundingVolumeHierarchy)
+     *         are outside the view frustum, or because their bounding box is outside the image
+     */
+    public long getTrianglesOffScreen() {
+        return trianglesOffScreen;
+    }
+
+    /**
+     * @return visible clusters of triangles sorted front to back (see Rasterizer.setDepthSorting),
+     *         0 if sorting is disabled or the order of the previous frame was reused
+     */
+    public long getClustersSorted() {
+        return clustersSorted;
+    }
+
+    /**
+     * @return triangles crossing the near or far plane (or a side plane, see Rasterizer.setClipToSides), which had to be clipped
+     */
+    public long getTrianglesClipped() {
+        return trianglesClipped;
+    }
+
+    /**
+     * @return triangles rejected by the cull mode (see Rasterizer.CullMode)
+     */
+    public long getTrianglesCulled() {
+        return trianglesCulled;
+    }
+
+    /**
+     * @return triangles which reached the fill stage
+     */
+    public long getTrianglesDrawn() {
+        return trianglesDrawn;
+    }
+
+    /**
+     * @return pixels tested against the edge functions of the drawn triangles
+     */
+    public long getPixelsTested() {
+        return pixelsTested;
+    }
+
+    /**
+     * @return covered pixels which passed the depth test, every one of them is written into the color buffer
+     */
+    public long getPixelsDepthPassed() {
+        return pixelsDepthPassed;
+    }
+
+    /**
+     * @return pixels of bounding boxes which were not tested, because the coarse depth test showed that
+     *         the triangle is behind the pixels filled before it (see Rasterizer.setOcclusionCulling)
+     */
+    public long getPixelsOccluded() {
+        return pixelsOccluded;
+    }
+
+    /**
+     * @return pixels of the image covered by at least one triangle
+     */
+    public long getPixelsCovered() {
+        return pixelsCovered;
+    }
+
+    /**
+     * @return average number of times a covered pixel was written, 1 if every pixel was written once (no overdraw)
+     */
+    public double getOverdraw() {
+        return pixelsCovered == 0 ? 0 : (double) pixelsDepthPassed / pixelsCovered;
+    }
+}
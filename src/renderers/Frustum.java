@@ -0,0 +1,62 @@
+package renderers;
+
+import maths.Matrix4;
+
+/**
+ * View frustum in object space, i.e. the planes of the clip volume -w <= x, y, z <= w transformed back by
+ * the model-view-projection matrix. With row vectors clip coordinate j of a point is its dot product with column j
+ * of the matrix, so every plane is the sum or difference of the w column and another column (Gribb-Hartmann).
+ */
+class Frustum {
+    static final int OUTSIDE = 0;
+    static final int INTERSECTS = 1;
+    static final int INSIDE = 2;
+
+    // a, b, c, d of the near, far, left, right, bottom and top planes, a * x + b * y + c * z + d >= 0 inside
+    private final double[] planes = new double[6 * 4];
+
+    void set(Matrix4 m) {
+        setPlane(0, m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+        setPlane(1, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+        setPlane(2, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+        setPlane(3, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+        setPlane(4, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+        setPlane(5, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+    }
+
+    private void setPlane(int plane, double a, double b, double c, double d) {
+        planes[plane * 4] = a;
+        planes[plane * 4 + 1] = b;
+        planes[plane * 4 + 2] = c;
+        planes[plane * 4 + 3] = d;
+    }
+
+    /**
+     * Classifies the axis-aligned box given as minX, minY, minZ, maxX, maxY, maxZ starting at the offset.
+     * The test is conservative: a box near a corner of the frustum may be reported as intersecting while it is outside.
+     * @return OUTSIDE, INTERSECTS or INSIDE
+     */
+    int classify(float[] bounds, int offset) {
+        double minX = bounds[offset], minY = bounds[offset + 1], minZ = bounds[offset + 2];
+        double maxX = bounds[offset + 3], maxY = bounds[offset + 4], maxZ = bounds[offset + 5];
+        int result = INSIDE;
+
+        for (int i = 0; i < planes.length; i += 4) {
+            double a = planes[i], b = planes[i + 1], c = planes[i + 2], d = planes[i + 3];
+
+            // Corner of the box furthest along the plane normal, if it is outside the whole box is
+            double farthest = a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d;
+            if (farthest < 0) {
+                return OUTSIDE;
+            }
+
+            // Opposite corner, if it is outside the box crosses the plane
+            double nearest = a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d;
+            if (nearest < 0) {
+                result = INTERSECTS;
+            }
+        }
+
+        return result;
+    }
+}
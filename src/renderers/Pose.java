@@ -0,0 +1,25 @@
+package renderers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rotation of the rendered object in degrees, same angles as the ones set by Rasterizer.setYaw, setPitch and setRoll
+ */
+public record Pose(int yaw, int pitch, int roll) {
+    /**
+     * @return poses of a full turn around Oy, yaw angles are spread evenly (rounded to whole degrees)
+     */
+    public static List<Pose> getTurntable(int frames, int pitch, int roll) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Turntable should have at least one frame");
+        }
+
+        List<Pose> poses = new ArrayList<>(frames);
+        for (int i = 0; i < frames; i++) {
+            poses.add(new Pose((int) Math.round(360.0 * i / frames), pitch, roll));
+        }
+
+        return poses;
+    }
+}
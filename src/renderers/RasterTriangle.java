@@ -0,0 +1,121 @@
+package renderers;
+
+import maths.Vector3;
+
+/**
+ * Triangle that has already been projected to raster space and is ready to be filled.
+ * Vertices keep the order of the mesh (either winding is filled), bounding box is clamped to the image.
+ * <p>
+ * Edge functions are set up once here: edge i is E(x, y) = (x - originX) * stepX - (y - originY) * stepY,
+ * so moving one pixel right adds stepX and moving one row down subtracts stepY.
+ * Edges are oriented to be positive inside the triangle regardless of the winding of the vertices.
+ */
+public class RasterTriangle {
+    public final Vector3 v0;
+    public final Vector3 v1;
+    public final Vector3 v2;
+    public final int rgb;
+
+    // Pixels in [xMin, xMax) x [yMin, yMax) are tested against the triangle
+    public final int xMin;
+    public final int xMax;
+    public final int yMin;
+    public final int yMax;
+
+    // Triangle area (multiplied by two), zero for degenerate triangles which cover no pixels
+    public final double area2;
+
+    // Edge 0 is opposite to v0 (v1 -> v2), edge 1 is opposite to v1 (v2 -> v0), edge 2 is opposite to v2 (v0 -> v1)
+    final double edge0OriginX, edge0OriginY, edge0StepX, edge0StepY;
+    final double edge1OriginX, edge1OriginY, edge1StepX, edge1StepY;
+    final double edge2OriginX, edge2OriginY, edge2StepX, edge2StepY;
+
+    // Whether a pixel lying exactly on the edge is covered (top-left rule)
+    final boolean edge0TopLeft;
+    final boolean edge1TopLeft;
+    final boolean edge2TopLeft;
+
+    // Largest magnitude of each edge function over the bounding box, see getStepErrorBound
+    final double edge0Magnitude;
+    final double edge1Magnitude;
+    final double edge2Magnitude;
+
+    // z / area2 of each vertex, so that z = e0 * zOverArea0 + e1 * zOverArea1 + e2 * zOverArea2.
+    // Raster z is the NDC depth, which is an affine function of raster x and y, so it is interpolated linearly
+    final double zOverArea0;
+    final double zOverArea1;
+    final double zOverArea2;
+
+    // Depth of the nearest vertex rounded down, no pixel of the triangle is nearer (used by the coarse depth test)
+    final float zMin;
+
+    public RasterTriangle(Vector3 v0, Vector3 v1, Vector3 v2, int rgb, int xMin, int xMax, int yMin, int yMax) {
+        this.v0 = v0;
+        this.v1 = v1;
+        this.v2 = v2;
+        this.rgb = rgb;
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+
+        // Same as Triangle.edgeFunction(v0, v1, v2)
+        area2 = (v2.x - v0.x) * (v1.y - v0.y) - (v2.y - v0.y) * (v1.x - v0.x);
+
+        // Negating both steps negates the edge function exactly, so the sign of the barycentric coordinates is preserved
+        double orientation = area2 < 0 ? -1 : 1;
+
+        edge0OriginX = v1.x;
+        edge0OriginY = v1.y;
+        edge0StepX = orientation * (v2.y - v1.y);
+        edge0StepY = orientation * (v2.x - v1.x);
+
+        edge1OriginX = v2.x;
+        edge1OriginY = v2.y;
+        edge1StepX = orientation * (v0.y - v2.y);
+        edge1StepY = orientation * (v0.x - v2.x);
+
+        edge2OriginX = v0.x;
+        edge2OriginY = v0.y;
+        edge2StepX = orientation * (v1.y - v0.y);
+        edge2StepY = orientation * (v1.x - v0.x);
+
+        edge0TopLeft = isTopLeft(v2.x - v1.x, v2.y - v1.y);
+        edge1TopLeft = isTopLeft(v0.x - v1.x, v0.y - v1.y);
+        edge2TopLeft = isTopLeft(v1.x - v0.x, v1.y - v0.y);
+
+        edge0Magnitude = getMagnitude(edge0OriginX, edge0OriginY, edge0StepX, edge0StepY);
+        edge1Magnitude = getMagnitude(edge1OriginX, edge1OriginY, edge1StepX, edge1StepY);
+        edge2Magnitude = getMagnitude(edge2OriginX, edge2OriginY, edge2StepX, edge2StepY);
+
+        double orientedArea2 = orientation * area2;
+        zOverArea0 = v0.z / orientedArea2;
+        zOverArea1 = v1.z / orientedArea2;
+        zOverArea2 = v2.z / orientedArea2;
+
+        // Interpolated depth may be a rounding error less than the one of the vertex, hence the step down
+        zMin = Math.nextDown((float) Math.min(v0.z, Math.min(v1.z, v2.z)));
+    }
+
+    private static boolean isTopLeft(double edgeX, double edgeY) {
+        return (edgeY == 0 && edgeX > 0) || edgeY > 0;
+    }
+
+    /**
+     * Upper bound of |(x - originX) * stepX| + |(y - originY) * stepY| over the bounding box
+     */
+    private double getMagnitude(double originX, double originY, double stepX, double stepY) {
+        double dx = Math.max(Math.abs(xMin - originX), Math.abs(xMax - originX));
+        double dy = Math.max(Math.abs(yMin - originY), Math.abs(yMax - originY));
+        return dx * Math.abs(stepX) + dy * Math.abs(stepY);
+    }
+
+    /**
+     * Edge values stepped along a row drift away from the directly evaluated ones by rounding errors.
+     * Returns a bound of that drift after the given number of steps: a stepped value whose magnitude is greater
+     * has the same sign as the directly evaluated one, smaller values have to be evaluated directly.
+     */
+    static double getStepErrorBound(double magnitude, int steps) {
+        return (steps + 16) * magnitude * 0x1p-50;
+    }
+}
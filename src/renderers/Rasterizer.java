@@ -2,39 +2,106 @@ package renderers;
 
 import cameras.PinholeRasterCamera;
 import maths.*;
+import meshes.BoundingVolumeHierarchy;
+import meshes.IndexedMesh;
+import meshes.LevelOfDetail;
 import util.Models3D;
 
 import java.awt.*;
 import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Rasterizer {
-
-    private final PinholeRasterCamera camera;
-
-    private Matrix woldToCamera;
-    private ArrayList<Triangle> currentObject;
-
+    // Side of a square screen tile in pixels, used when filling in parallel
+    private static final int TILE_SIZE = 64;
+    // Largest error of a level of detail on screen, in pixels
+    private static final double MAX_LEVEL_ERROR = 1;
+
+    private PinholeRasterCamera camera;
+
+    // Object rotation combined with the camera view-projection matrix, one multiplication per vertex
+    private Matrix4 modelViewProjection;
+    private final FrameBuffer frameBuffer = new FrameBuffer();
+    private IndexedMesh currentObject;
+    // Current object or its level of detail, drawn in the current frame
+    private IndexedMesh renderedObject;
+    // Clip space coordinates of the current object vertices (x, y, z, w quadruples), their outcodes (see Clipper)
+    // and raster space coordinates, reused between frames. Only vertices of the triangles in the view frustum
+    // are transformed, vertexFrames holds the number of the frame in which each vertex was transformed last
+    private double[] clipCoordinates;
+    private byte[] outcodes;
+    private Vector3[] transformedVertices;
+    private int[] vertexFrames;
+    private int frame;
+
+    // Hierarchy leaves which are in the view frustum (or cross it) and their triangles, in the order of the mesh
+    // or front to back. If the whole object is in view, leaves are not collected
+    private final Frustum frustum = new Frustum();
+    private int[] visibleLeaves;
+    private int visibleLeafCount;
+    private boolean allVisible;
+    private long[] visibleMask;
+    private int[] visibleTriangles;
+    private int visibleTriangleCount;
+    private final int[] nodeStack = new int[64];
+
+    private final Clipper clipper = new Clipper();
+    // Near and far planes are always clipped, side planes only if enabled, since bounding boxes are clamped to the image anyway
+    private boolean clipToSides = false;
+
+    private final ArrayList<RasterTriangle> trianglesToFill = new ArrayList<>();
+    // Bounding boxes and wireframe are drawn over the filled faces
+    private final ArrayList<RasterTriangle> trianglesToOutline = new ArrayList<>();
 
     private boolean showWireframe = false;
     private boolean showFaces = true;
     private boolean showBoundingBoxes = false;
-    
-    private Graphics g;
+
+    /**
+     * Which triangles are rejected before rasterization. Front faces are the ones whose vertices are in
+     * counterclockwise order when looking at them (OBJ convention); triangles of zero area are culled in both modes.
+     */
+    public enum CullMode {
+        NONE, BACK, FRONT
+    }
+
+    // Nothing is culled by default, since open meshes (e.g. the flat Christmas tree) should be visible from both sides
+    private CullMode cullMode = CullMode.NONE;
+    // Triangles hidden behind already filled pixels are rejected by the coarse depth test (see FrameBuffer)
+    private boolean occlusionCulling = true;
+    // Visible triangles are filled front to back instead of the mesh order if enabled
+    private boolean depthSorting = false;
+    private final DepthSorter depthSorter = new DepthSorter();
+    // Coarser levels of detail of the object are drawn where their error is not visible, if enabled and built
+    private boolean levelOfDetail = false;
 
     private int yaw;
     private int pitch;
     private int roll;
-    
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool pool;
+
+    private long rasterizeTime;
+    private long presentTime;
+    // Null while statistics are disabled
+    private FrameStats stats;
+
     public Rasterizer(PinholeRasterCamera camera) {
         this.camera = camera;
     }
 
-    public void setGraphics(Graphics g) {
-        this.g = g;
+    /**
+     * Replaces the camera, e.g. with a copy of a camera edited on another thread, takes effect from the next frame
+     */
+    public void setCamera(PinholeRasterCamera camera) {
+        this.camera = camera;
     }
 
     public void setYaw(int yaw) {
@@ -49,184 +116,712 @@ public class Rasterizer {
         this.roll = roll;
     }
 
+    /**
+     * Rasterize phase: draws the current object into the frame buffer, see getFrame.
+     * Nothing is drawn on screen until the frame is presented.
+     */
     public void render() {
-        woldToCamera = camera.getCameraMatrix().getInverse();
-        Matrix xzRotation = Matrix.getXZRightHandedRotationMatrix(yaw);
-        Matrix yzRotation = Matrix.getYZRightHandedRotationMatrixAlt(pitch);
-        Matrix xyRotation = Matrix.getXYRightHandedRotationMatrix(roll);
-        Matrix rotationMatrix = xzRotation.multiply(yzRotation).multiply(xyRotation);
-
-        Graphics2D graphics2D = (Graphics2D) g;
-        graphics2D.setColor(Color.BLACK);
-        graphics2D.fillRect(0, 0, (int) camera.getImageWidth(), (int) camera.getImageHeight());
-        graphics2D.setColor(Color.WHITE);
-
-        if (currentObject == null || currentObject.isEmpty()) {
-            currentObject = Models3D.getXMasTreeTriangles();
-        }
-
-        BufferedImage image = new BufferedImage((int) camera.getImageWidth(), (int) camera.getImageHeight(), BufferedImage.TYPE_INT_ARGB);
-        double[][] depthBuffer = new double[image.getHeight()][image.getWidth()];
-        for (double[] doubles : depthBuffer) {
-            Arrays.fill(doubles, 1); // Z value of raster coordinates is normalized between 0 and 1, where 1 is the distance to far clipping plane
-        }
-
-        for (Triangle triangle : currentObject) {
-            // Get triangle vertices as vectors
-            Vector3 v0Space = triangle.v0;
-            Vector3 v1Space = triangle.v1;
-            Vector3 v2Space = triangle.v2;
-
-            // Apply transformation
-            // Todo: add scaling and translation
-            v0Space = v0Space.multiplyByMatrix(rotationMatrix);
-            v1Space = v1Space.multiplyByMatrix(rotationMatrix);
-            v2Space = v2Space.multiplyByMatrix(rotationMatrix);
-
-            // Get raster coordinates
-            Vector3 v0Raster = convertToRaster(v0Space);
-            Vector3 v1Raster = convertToRaster(v1Space);
-            Vector3 v2Raster = convertToRaster(v2Space);
-            ArrayList<Vector3> triangleVerticesRaster = new ArrayList<>(java.util.List.of(v0Raster, v1Raster, v2Raster));
-
-            // Ensure that vertices are in a counterclockwise order
-            if (Vector3.isClockwise(triangleVerticesRaster)) {
-                Vector3.sortPointsInClockwiseFashion(triangleVerticesRaster); // Using this because screen y coordinate is flipped
-            }
-
-            // Compute bounding box
-            double boundingBoxXMin = Math.min(triangleVerticesRaster.get(0).x, Math.min(triangleVerticesRaster.get(1).x, triangleVerticesRaster.get(2).x));
-            double boundingBoxXMax = Math.max(triangleVerticesRaster.get(0).x, Math.max(triangleVerticesRaster.get(1).x, triangleVerticesRaster.get(2).x));
-            double boundingBoxYMin = Math.min(triangleVerticesRaster.get(0).y, Math.min(triangleVerticesRaster.get(1).y, triangleVerticesRaster.get(2).y));
-            double boundingBoxYMax = Math.max(triangleVerticesRaster.get(0).y, Math.max(triangleVerticesRaster.get(1).y, triangleVerticesRaster.get(2).y));
-
-            // If bounding box is out of the screen, the triangle is not visible, therefore no need to proceed
-            if (boundingBoxXMin > camera.getImageWidth() - 1 || boundingBoxXMax < 0 || boundingBoxYMin > camera.getImageHeight() - 1 || boundingBoxYMax < 0) {
+        long start = System.nanoTime();
+        FrameStats frameStats = stats;
+        if (frameStats != null) {
+            frameStats.reset();
+        }
+
+        Matrix3 xzRotation = Matrix3.getXZRightHandedRotationMatrix(yaw);
+        Matrix3 yzRotation = Matrix3.getYZRightHandedRotationMatrixAlt(pitch);
+        Matrix3 xyRotation = Matrix3.getXYRightHandedRotationMatrix(roll);
+        Matrix3 rotationMatrix = xzRotation.multiply(yzRotation).multiply(xyRotation);
+
+        // Todo: add scaling and translation
+        Matrix4 model = Matrix4.fromMatrix3(rotationMatrix);
+        modelViewProjection = model.multiply(camera.getViewProjectionMatrix());
+
+        if (currentObject == null || currentObject.getTriangleCount() == 0) {
+            currentObject = Models3D.getXMasTree();
+        }
+        renderedObject = selectLevelOfDetail(model.multiply(camera.getWorldToCameraMatrix()), frameStats);
+
+        boolean sorting = depthSorting;
+        collectVisibleLeaves(sorting, frameStats);
+        long stageStart = recordStage(frameStats, FrameStats.Stage.CULL, start);
+
+        if (sorting) {
+            boolean sorted = depthSorter.sort(renderedObject.getHierarchy(), visibleLeaves, visibleLeafCount, modelViewProjection);
+            if (sorted && frameStats != null) {
+                frameStats.clustersSorted = visibleLeafCount;
+            }
+            stageStart = recordStage(frameStats, FrameStats.Stage.SORT, stageStart);
+        }
+
+        transformVisibleTriangles(sorting && !allVisible);
+        stageStart = recordStage(frameStats, FrameStats.Stage.TRANSFORM, stageStart);
+
+        frameBuffer.resize((int) camera.getImageWidth(), (int) camera.getImageHeight());
+        frameBuffer.clear(Color.BLACK.getRGB());
+        stageStart = recordStage(frameStats, FrameStats.Stage.CLEAR, stageStart);
+
+        trianglesToFill.clear();
+        trianglesToOutline.clear();
+
+        int[] indices = renderedObject.getIndices();
+        int[] colors = renderedObject.getColors();
+        int clipPlanes = clipToSides ? Clipper.NEAR | Clipper.FAR | Clipper.SIDES : Clipper.NEAR | Clipper.FAR;
+
+        for (int v = 0; v < visibleTriangleCount; v++) {
+            int i = visibleTriangles[v];
+            int i0 = indices[i * 3];
+            int i1 = indices[i * 3 + 1];
+            int i2 = indices[i * 3 + 2];
+
+            // All vertices are outside the same plane, so the triangle is outside the view frustum
+            if ((outcodes[i0] & outcodes[i1] & outcodes[i2]) != 0) {
+                if (frameStats != null) {
+                    frameStats.trianglesOffScreen++;
+                }
                 continue;
             }
 
-            // Clamp bounding box inside the canvas
-            int xMin = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxXMin), camera.getImageWidth() - 1));
-            int xMax = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxXMax), camera.getImageWidth() - 1));
-            int yMin = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxYMin), camera.getImageHeight() - 1));
-            int yMax = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxYMax), camera.getImageHeight() - 1));
+            if (((outcodes[i0] | outcodes[i1] | outcodes[i2]) & clipPlanes) == 0) {
+                submitTriangle(transformedVertices[i0], transformedVertices[i1], transformedVertices[i2], colors[i], frameStats);
+                continue;
+            }
+
+            // Triangle crosses a clipping plane, the part inside the frustum is drawn as a fan of triangles
+            if (frameStats != null) {
+                frameStats.trianglesClipped++;
+            }
+
+            int count = clipper.clip(clipCoordinates, i0, i1, i2, clipPlanes);
+            double[] polygon = clipper.getVertices();
+
+            if (count >= 3) {
+                Vector3 first = toRaster(polygon[0], polygon[1], polygon[2], polygon[3]);
+                Vector3 previous = toRaster(polygon[4], polygon[5], polygon[6], polygon[7]);
+
+                for (int k = 2; k < count; k++) {
+                    Vector3 current = toRaster(polygon[k * 4], polygon[k * 4 + 1], polygon[k * 4 + 2], polygon[k * 4 + 3]);
+                    submitTriangle(first, previous, current, colors[i], frameStats);
+                    previous = current;
+                }
+            }
+        }
+
+        if (frameStats != null) {
+            frameStats.trianglesSubmitted = colors.length;
+            frameStats.trianglesDrawn = trianglesToFill.size();
+        }
+        stageStart = recordStage(frameStats, FrameStats.Stage.SETUP, stageStart);
+
+        if (parallelism > 1) {
+            fillTiles(trianglesToFill, frameStats);
+        } else {
+            long[] pixelCounters = frameStats != null ? new long[3] : null;
+            for (RasterTriangle triangle : trianglesToFill) {
+                fillTriangle(triangle, 0, 0, frameBuffer.getWidth(), frameBuffer.getHeight(), pixelCounters);
+            }
+
+            if (frameStats != null) {
+                frameStats.addPixels(pixelCounters[0], pixelCounters[1], pixelCounters[2]);
+            }
+        }
+        stageStart = recordStage(frameStats, FrameStats.Stage.FILL, stageStart);
+
+        if (frameStats != null) {
+            frameStats.pixelsCovered = countCoveredPixels();
+        }
+
+        if (!trianglesToOutline.isEmpty()) {
+            drawOutlines(trianglesToOutline);
+        }
+        long end = recordStage(frameStats, FrameStats.Stage.OUTLINE, stageStart);
+
+        rasterizeTime = end - start;
+    }
+
+    /**
+     * Culls the triangle, sets it up and queues it for filling and outlining
+     */
+    private void submitTriangle(Vector3 v0Raster, Vector3 v1Raster, Vector3 v2Raster, int rgb, FrameStats frameStats) {
+        // Signed area (same as RasterTriangle.area2), positive if the vertices are counterclockwise in NDC (front face)
+        double area2 = (v2Raster.x - v0Raster.x) * (v1Raster.y - v0Raster.y) - (v2Raster.y - v0Raster.y) * (v1Raster.x - v0Raster.x);
+        if (cullMode == CullMode.BACK && area2 <= 0 || cullMode == CullMode.FRONT && area2 >= 0) {
+            if (frameStats != null) {
+                frameStats.trianglesCulled++;
+            }
+            return;
+        }
+
+        // Compute bounding box
+        double boundingBoxXMin = Math.min(v0Raster.x, Math.min(v1Raster.x, v2Raster.x));
+        double boundingBoxXMax = Math.max(v0Raster.x, Math.max(v1Raster.x, v2Raster.x));
+        double boundingBoxYMin = Math.min(v0Raster.y, Math.min(v1Raster.y, v2Raster.y));
+        double boundingBoxYMax = Math.max(v0Raster.y, Math.max(v1Raster.y, v2Raster.y));
+
+        // If bounding box is out of the screen, the triangle is not visible, therefore no need to proceed
+        if (boundingBoxXMin > camera.getImageWidth() - 1 || boundingBoxXMax < 0 || boundingBoxYMin > camera.getImageHeight() - 1 || boundingBoxYMax < 0) {
+            if (frameStats != null) {
+                frameStats.trianglesOffScreen++;
+            }
+            return;
+        }
+
+        // Clamp bounding box inside the canvas
+        int xMin = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxXMin), camera.getImageWidth() - 1));
+        int xMax = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxXMax), camera.getImageWidth() - 1));
+        int yMin = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxYMin), camera.getImageHeight() - 1));
+        int yMax = (int) Math.max(0, Math.min((int) Math.floor(boundingBoxYMax), camera.getImageHeight() - 1));
+
+        RasterTriangle rasterTriangle = new RasterTriangle(v0Raster, v1Raster, v2Raster, rgb, xMin, xMax, yMin, yMax);
+
+        if (showBoundingBoxes || showWireframe) {
+            trianglesToOutline.add(rasterTriangle);
+        }
+
+        if (showFaces) {
+            trianglesToFill.add(rasterTriangle);
+        }
+    }
+
+    /**
+     * Records the duration of a stage which started at stageStart (if statistics are enabled)
+     * @return current time, i.e. the start of the next stage
+     */
+    private static long recordStage(FrameStats stats, FrameStats.Stage stage, long stageStart) {
+        long now = System.nanoTime();
+        if (stats != null) {
+            stats.setStageTime(stage, now - stageStart);
+        }
+        return now;
+    }
+
+    /**
+     * @return number of pixels of the frame covered by at least one triangle, i.e. whose depth was written
+     */
+    private long countCoveredPixels() {
+        long covered = 0;
+        for (float z : frameBuffer.getDepth()) {
+            if (z != FrameBuffer.FAR_DEPTH) {
+                covered++;
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Present phase: draws the last rendered frame with a single blit.
+     * Swing components are painted into a back buffer already, so the frame is not buffered again here.
+     */
+    public void present(Graphics g) {
+        long start = System.nanoTime();
+        g.drawImage(frameBuffer.getImage(), 0, 0, null);
+        presentTime = System.nanoTime() - start;
+
+        if (stats != null) {
+            stats.setStageTime(FrameStats.Stage.PRESENT, presentTime);
+        }
+    }
+
+    private void drawOutlines(List<RasterTriangle> triangles) {
+        Graphics2D graphics2D = frameBuffer.getImage().createGraphics();
 
+        for (RasterTriangle triangle : triangles) {
             if (showBoundingBoxes) {
                 graphics2D.setColor(Color.RED);
-                graphics2D.drawRect(xMin, yMin, xMax - xMin, yMax - yMin);
+                graphics2D.drawRect(triangle.xMin, triangle.yMin, triangle.xMax - triangle.xMin, triangle.yMax - triangle.yMin);
             }
 
-            // Get triangle area (multiplied by two) using edge function
-            double triangleArea2 = Triangle.edgeFunction(triangleVerticesRaster.get(0), triangleVerticesRaster.get(1), triangleVerticesRaster.get(2));
-
             // Draw wireframe
             if (showWireframe) {
                 Path2D edgePath = new Path2D.Double();
-                edgePath.moveTo(v0Raster.x, v0Raster.y);
-                edgePath.lineTo(v1Raster.x, v1Raster.y);
-                edgePath.lineTo(v2Raster.x, v2Raster.y);
+                edgePath.moveTo(triangle.v0.x, triangle.v0.y);
+                edgePath.lineTo(triangle.v1.x, triangle.v1.y);
+                edgePath.lineTo(triangle.v2.x, triangle.v2.y);
                 edgePath.closePath();
 
-                graphics2D.setColor(triangle.color);
+                graphics2D.setColor(new Color(triangle.rgb));
                 graphics2D.draw(edgePath);
             }
+        }
+
+        graphics2D.dispose();
+    }
+
+    /**
+     * @return image of the last rendered frame, it is reused (and overwritten) by the next frame of the same size
+     */
+    public BufferedImage getFrame() {
+        return frameBuffer.getImage();
+    }
+
+    /**
+     * @return color buffer of the last rendered frame, pixels are 0xRRGGBB ints (the highest byte is not used) stored row by row
+     */
+    public int[] getColorBuffer() {
+        return frameBuffer.getColor();
+    }
+
+    /**
+     * Enables or disables collecting of per-stage timings and triangle and pixel counters, see getStats.
+     * While disabled, the only overhead is a few null checks per triangle, while enabled covered pixels are also counted
+     * after every frame.
+     */
+    public void setStatsEnabled(boolean enabled) {
+        if (!enabled) {
+            stats = null;
+        } else if (stats == null) {
+            stats = new FrameStats();
+        }
+    }
+
+    /**
+     * @return statistics of the last frame (overwritten by the next one) or null if statistics are disabled
+     */
+    public FrameStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return duration of the last rasterize phase in nanoseconds
+     */
+    public long getRasterizeTime() {
+        return rasterizeTime;
+    }
+
+    /**
+     * @return duration of the last present phase in nanoseconds
+     */
+    public long getPresentTime() {
+        return presentTime;
+    }
+
+    /**
+     * Fills the part of the triangle which lies inside the clip rectangle [clipXMin, clipXMax) x [clipYMin, clipYMax).
+     * Edge functions are evaluated directly at the start of each row and stepped by a constant along it.
+     * Stepped values that are too close to zero to trust their sign are evaluated directly,
+     * therefore coverage (including the top-left rule for pixels lying on an edge) is the same as with direct evaluation.
+     * The whole part is skipped if the coarse depth test shows that it is behind the pixels filled already.
+     * @param pixelCounters if not null, numbers of tested, depth-passed and skipped (occluded) pixels are added to its elements
+     */
+    private void fillTriangle(RasterTriangle t, int clipXMin, int clipYMin, int clipXMax, int clipYMax, long[] pixelCounters) {
+        int width = frameBuffer.getWidth();
+        int[] color = frameBuffer.getColor();
+        float[] depth = frameBuffer.getDepth();
+
+        if (t.area2 == 0) {
+            return; // Degenerate triangle does not cover any pixel
+        }
+
+        int xStart = Math.max(t.xMin, clipXMin);
+        int xEnd = Math.min(t.xMax, clipXMax);
+        int yStart = Math.max(t.yMin, clipYMin);
+        int yEnd = Math.min(t.yMax, clipYMax);
+        if (xStart >= xEnd || yStart >= yEnd) {
+            return;
+        }
+
+        boolean updateCoarseDepth = occlusionCulling;
+        if (updateCoarseDepth && frameBuffer.isOccluded(xStart, yStart, xEnd, yEnd, t.zMin)) {
+            if (pixelCounters != null) {
+                pixelCounters[2] += (long) (xEnd - xStart) * (yEnd - yStart);
+            }
+            return;
+        }
 
-            if (showFaces && !Vector3.isClockwise(triangleVerticesRaster)) {
-                // Process only inside the bounding box
-                for (int y = yMin; y < yMax; y++) {
-                    for (int x = xMin; x < xMax; x++) {
-                        // Compute barycentric coordinates in order to check whether the point (x, y) lies within the triangle
-                        Vector2 pixel = new Vector2(x, y);
-                        double w0 = Triangle.edgeFunction(triangleVerticesRaster.get(1), triangleVerticesRaster.get(2), pixel) / triangleArea2;
-                        double w1 = Triangle.edgeFunction(triangleVerticesRaster.get(2), triangleVerticesRaster.get(0), pixel) / triangleArea2;
-                        double w2 = Triangle.edgeFunction(triangleVerticesRaster.get(0), triangleVerticesRaster.get(1), pixel) / triangleArea2;
-
-                        if (isPixelOverlapping(triangleVerticesRaster, java.util.List.of(w0, w1, w2))) {
-                            // Interpolate z perspective correctly
-                            double z = 1 / (
-                                    1 / triangleVerticesRaster.get(0).z * w0
-                                            + 1 / triangleVerticesRaster.get(1).z * w1
-                                            + 1 / triangleVerticesRaster.get(2).z * w2);
-
-                            if (z < depthBuffer[y][x]) {
-                                depthBuffer[y][x] = z;
-                                image.setRGB(x, y, triangle.color.getRGB());
-                            }
+        double bound0 = RasterTriangle.getStepErrorBound(t.edge0Magnitude, xEnd - xStart);
+        double bound1 = RasterTriangle.getStepErrorBound(t.edge1Magnitude, xEnd - xStart);
+        double bound2 = RasterTriangle.getStepErrorBound(t.edge2Magnitude, xEnd - xStart);
+        int depthPassed = 0;
+
+        for (int y = yStart; y < yEnd; y++) {
+            int row = y * width;
+            double e0 = (xStart - t.edge0OriginX) * t.edge0StepX - (y - t.edge0OriginY) * t.edge0StepY;
+            double e1 = (xStart - t.edge1OriginX) * t.edge1StepX - (y - t.edge1OriginY) * t.edge1StepY;
+            double e2 = (xStart - t.edge2OriginX) * t.edge2StepX - (y - t.edge2OriginY) * t.edge2StepY;
+
+            for (int x = xStart; x < xEnd; x++, e0 += t.edge0StepX, e1 += t.edge1StepX, e2 += t.edge2StepX) {
+                double w0 = Math.abs(e0) > bound0 ? e0 : (x - t.edge0OriginX) * t.edge0StepX - (y - t.edge0OriginY) * t.edge0StepY;
+                double w1 = Math.abs(e1) > bound1 ? e1 : (x - t.edge1OriginX) * t.edge1StepX - (y - t.edge1OriginY) * t.edge1StepY;
+                double w2 = Math.abs(e2) > bound2 ? e2 : (x - t.edge2OriginX) * t.edge2StepX - (y - t.edge2OriginY) * t.edge2StepY;
+
+                boolean overlaps = (w0 == 0 ? t.edge0TopLeft : w0 > 0)
+                        && (w1 == 0 ? t.edge1TopLeft : w1 > 0)
+                        && (w2 == 0 ? t.edge2TopLeft : w2 > 0);
+
+                if (overlaps) {
+                    float z = (float) (w0 * t.zOverArea0 + w1 * t.zOverArea1 + w2 * t.zOverArea2);
+
+                    if (z < depth[row + x]) {
+                        if (updateCoarseDepth) {
+                            frameBuffer.writeDepth(x, y, z);
+                        } else {
+                            depth[row + x] = z;
                         }
+                        color[row + x] = t.rgb;
+                        depthPassed++;
                     }
                 }
-                graphics2D.drawImage(image, 0, 0, null);
             }
         }
+
+        if (pixelCounters != null) {
+            pixelCounters[0] += (long) (xEnd - xStart) * (yEnd - yStart);
+            pixelCounters[1] += depthPassed;
+        }
+    }
+
+    /**
+     * Splits the image into square tiles, bins triangles into the tiles their bounding boxes touch and fills the tiles in parallel.
+     * Every tile owns its own part of the frame buffer and keeps triangles in submission order,
+     * therefore the result is the same as when the triangles are filled one by one.
+     */
+    private void fillTiles(List<RasterTriangle> triangles, FrameStats frameStats) {
+        int tilesX = (frameBuffer.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (frameBuffer.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+
+        List<List<RasterTriangle>> bins = new ArrayList<>(tilesX * tilesY);
+        for (int i = 0; i < tilesX * tilesY; i++) {
+            bins.add(new ArrayList<>());
+        }
+
+        for (RasterTriangle triangle : triangles) {
+            if (triangle.xMin >= triangle.xMax || triangle.yMin >= triangle.yMax) {
+                continue; // Bounding box does not contain any pixel to test
+            }
+
+            for (int tileY = triangle.yMin / TILE_SIZE; tileY <= (triangle.yMax - 1) / TILE_SIZE; tileY++) {
+                for (int tileX = triangle.xMin / TILE_SIZE; tileX <= (triangle.xMax - 1) / TILE_SIZE; tileX++) {
+                    bins.get(tileY * tilesX + tileX).add(triangle);
+                }
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < bins.size(); i++) {
+            List<RasterTriangle> bin = bins.get(i);
+            if (bin.isEmpty()) {
+                continue;
+            }
+
+            int clipXMin = (i % tilesX) * TILE_SIZE;
+            int clipYMin = (i / tilesX) * TILE_SIZE;
+            int clipXMax = Math.min(clipXMin + TILE_SIZE, frameBuffer.getWidth());
+            int clipYMax = Math.min(clipYMin + TILE_SIZE, frameBuffer.getHeight());
+
+            tasks.add(() -> {
+                long[] pixelCounters = frameStats != null ? new long[3] : null;
+                for (RasterTriangle triangle : bin) {
+                    fillTriangle(triangle, clipXMin, clipYMin, clipXMax, clipYMax, pixelCounters);
+                }
+
+                if (frameStats != null) {
+                    frameStats.addPixels(pixelCounters[0], pixelCounters[1], pixelCounters[2]);
+                }
+                return null;
+            });
+        }
+
+        for (Future<Void> result : getPool().invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Sets the number of worker threads used to fill triangles. With a single worker triangles are filled serially,
+     * otherwise the image is split into tiles which are filled simultaneously.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be positive");
+        }
+
+        if (pool != null && pool.getParallelism() != parallelism) {
+            pool.shutdown();
+            pool = null;
+        }
+
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
     }
 
     /**
-     * Checks whether a pixel on screen overlaps the triangle using barycentric coordinates.
-     * If a pixel lies on the edge (at least one barycentric coordinate is zero) uses top-left rule
-     * @param points vertices of the triangle
-     * @param barycentricCoordinates barycentric coordinates of a point
-     * @return true - if a pixel lies inside a triangle, false - otherwise
+     * Picks the coarsest level of detail of the current object whose error, projected at the point of the object nearest
+     * to the camera, is at most MAX_LEVEL_ERROR pixels. The canvas of the camera lies at the near clipping plane,
+     * so at the distance d a unit of length takes imageWidth / canvasWidth * near / d pixels (at any distance
+     * for the orthographic projection).
+     * @return the level or the current object itself
      */
-    private boolean isPixelOverlapping(java.util.List<Vector3> points, List<Double> barycentricCoordinates) {
-        Vector3 edge0 = points.get(2).minus(points.get(1));
-        Vector3 edge1 = points.get(0).minus(points.get(1));
-        Vector3 edge2 = points.get(1).minus(points.get(0));
+    private IndexedMesh selectLevelOfDetail(Matrix4 modelView, FrameStats frameStats) {
+        List<LevelOfDetail> levels = currentObject.getLevelsOfDetail();
+        if (!levelOfDetail || levels == null || levels.isEmpty()) {
+            return currentObject;
+        }
 
-        return ((barycentricCoordinates.get(0) == 0) ? ((edge0.y == 0 && edge0.x > 0) || edge0.y > 0) : barycentricCoordinates.get(0) > 0)
-                && ((barycentricCoordinates.get(1) == 0) ? ((edge1.y == 0 && edge1.x > 0) || edge1.y > 0) : barycentricCoordinates.get(1) > 0)
-                && ((barycentricCoordinates.get(2) == 0) ? ((edge2.y == 0 && edge2.x > 0) || edge2.y > 0) : barycentricCoordinates.get(2) > 0);
+        // Bounding sphere of the object around the center of its bounding box
+        float[] bounds = currentObject.getHierarchy().getBounds();
+        double sizeX = bounds[3] - bounds[0], sizeY = bounds[4] - bounds[1], sizeZ = bounds[5] - bounds[2];
+        double radius = Math.sqrt(sizeX * sizeX + sizeY * sizeY + sizeZ * sizeZ) / 2;
+        Vector4 center = new Vector4((bounds[0] + bounds[3]) / 2, (bounds[1] + bounds[4]) / 2, (bounds[2] + bounds[5]) / 2)
+                .multiplyByMatrix(modelView);
+
+        double pixelsPerUnit = camera.getImageWidth() / (camera.getCanvasRight() - camera.getCanvasLeft());
+        if (camera.getProjectionType() == PinholeRasterCamera.ProjectionType.PERSPECTIVE) {
+            // Camera looks along -z
+            double distance = Math.max(-center.z - radius, camera.getNearClippingPlane());
+            pixelsPerUnit *= camera.getNearClippingPlane() / distance;
+        }
+
+        for (int level = levels.size() - 1; level >= 0; level--) {
+            if (levels.get(level).error() * pixelsPerUnit <= MAX_LEVEL_ERROR) {
+                if (frameStats != null) {
+                    frameStats.levelOfDetail = level + 1;
+                }
+                return levels.get(level).mesh();
+            }
+        }
+
+        return currentObject;
     }
 
-    private Vector3 convertToRaster(Vector3 vertex) {
+    /**
+     * Walks the bounding volume hierarchy of the current object and collects the leaves which are not outside
+     * the view frustum into visibleLeaves. If the whole object is in view and the leaves are not going to be sorted,
+     * no leaves are collected and allVisible is set.
+     */
+    private void collectVisibleLeaves(boolean sorting, FrameStats frameStats) {
+        BoundingVolumeHierarchy hierarchy = renderedObject.getHierarchy();
+        if (visibleLeaves == null || visibleLeaves.length < hierarchy.getNodeCount()) {
+            visibleLeaves = new int[hierarchy.getNodeCount()];
+        }
+
+        visibleLeafCount = 0;
+        allVisible = false;
+        if (hierarchy.getNodeCount() == 0) {
+            return;
+        }
+
+        frustum.set(modelViewProjection);
+        float[] bounds = hierarchy.getBounds();
+
+        // Stack of node indices, the lowest bit is set if the node is known to be inside the frustum
+        int stackSize = 0;
+        nodeStack[stackSize++] = 0;
+
+        while (stackSize > 0) {
+            int entry = nodeStack[--stackSize];
+            int node = entry >>> 1;
+            boolean inside = (entry & 1) != 0;
+
+            if (!inside) {
+                int result = frustum.classify(bounds, node * 6);
+
+                if (result == Frustum.OUTSIDE) {
+                    if (frameStats != null) {
+                        frameStats.trianglesOffScreen += hierarchy.getCount(node);
+                    }
+                    continue;
+                }
+                inside = result == Frustum.INSIDE;
 
-        Vector4 vertexInCameraSpace = vertex.getAsVector4().multiplyByMatrix(woldToCamera);
+                if (inside && node == 0 && !sorting) {
+                    allVisible = true; // Leaves are not needed, every triangle is drawn in the mesh order
+                    return;
+                }
+            }
 
-        Matrix projectionMatrix = camera.getProjectionType() == PinholeRasterCamera.ProjectionType.PERSPECTIVE
-                ? computePerspectiveProjectionMatrix() : computeOrthographicProjectionMatrix();
+            if (!hierarchy.isLeaf(node)) {
+                int flag = inside ? 1 : 0;
+                nodeStack[stackSize++] = hierarchy.getRightChild(node) << 1 | flag;
+                nodeStack[stackSize++] = hierarchy.getLeftChild(node) << 1 | flag;
+                continue;
+            }
 
-        Vector3 vertexNormalized = vertexInCameraSpace.multiplyByMatrix(projectionMatrix).getAsVector3();
+            visibleLeaves[visibleLeafCount++] = node;
+        }
+    }
 
+    /**
+     * Collects the triangles of the visible leaves into visibleTriangles and converts their vertices to clip and raster
+     * space once, triangles sharing a vertex reuse the result, vertices of the skipped nodes are not transformed at all.
+     * Raster coordinates are used only by triangles which do not need clipping, i.e. whose vertices are in front of the camera.
+     * @param leafOrder whether triangles should follow the order of visibleLeaves (e.g. sorted front to back) instead of the mesh order
+     */
+    private void transformVisibleTriangles(boolean leafOrder) {
+        BoundingVolumeHierarchy hierarchy = renderedObject.getHierarchy();
+        int vertexCount = renderedObject.getVertexCount();
+        int triangleCount = renderedObject.getTriangleCount();
+
+        if (transformedVertices == null || transformedVertices.length < vertexCount) {
+            transformedVertices = new Vector3[vertexCount];
+            clipCoordinates = new double[vertexCount * 4];
+            outcodes = new byte[vertexCount];
+            vertexFrames = new int[vertexCount];
+            frame = 0;
+        }
+        if (visibleTriangles == null || visibleTriangles.length < triangleCount) {
+            visibleTriangles = new int[triangleCount];
+            visibleMask = new long[(triangleCount + 63) / 64];
+        }
+
+        frame++;
+        visibleTriangleCount = 0;
+        int[] triangles = hierarchy.getTriangles();
+        int[] indices = renderedObject.getIndices();
+
+        if (allVisible) {
+            // Whole object is in view, every vertex is transformed in order without any bookkeeping
+            for (int i = 0; i < triangleCount; i++) {
+                visibleTriangles[i] = i;
+            }
+            visibleTriangleCount = triangleCount;
+
+            for (int i = 0; i < vertexCount; i++) {
+                transformVertex(i);
+            }
+            return;
+        }
+
+        if (leafOrder) {
+            for (int i = 0; i < visibleLeafCount; i++) {
+                int first = hierarchy.getFirst(visibleLeaves[i]);
+                for (int t = first; t < first + hierarchy.getCount(visibleLeaves[i]); t++) {
+                    addVisibleTriangle(triangles[t], indices);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < visibleLeafCount; i++) {
+            int first = hierarchy.getFirst(visibleLeaves[i]);
+            for (int t = first; t < first + hierarchy.getCount(visibleLeaves[i]); t++) {
+                visibleMask[triangles[t] >>> 6] |= 1L << triangles[t];
+            }
+        }
+
+        // Hierarchy order is spatial, triangles are collected and their vertices transformed in the order of the mesh
+        // instead: vertices are read and written mostly sequentially, and overlapping triangles of the same depth
+        // cover each other the same way whatever the view is
+        for (int word = 0; word < (triangleCount + 63) / 64; word++) {
+            long bits = visibleMask[word];
+            if (bits == 0) {
+                continue;
+            }
+
+            visibleMask[word] = 0;
+            while (bits != 0) {
+                addVisibleTriangle(word << 6 | Long.numberOfTrailingZeros(bits), indices);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    private void addVisibleTriangle(int triangle, int[] indices) {
+        visibleTriangles[visibleTriangleCount++] = triangle;
+
+        for (int k = 0; k < 3; k++) {
+            int vertex = indices[triangle * 3 + k];
+            if (vertexFrames[vertex] != frame) {
+                vertexFrames[vertex] = frame;
+                transformVertex(vertex);
+            }
+        }
+    }
+
+    private void transformVertex(int i) {
+        Vector4 vertex = new Vector4(renderedObject.getX()[i], renderedObject.getY()[i], renderedObject.getZ()[i])
+                .multiplyByMatrix(modelViewProjection);
+
+        clipCoordinates[i * 4] = vertex.x;
+        clipCoordinates[i * 4 + 1] = vertex.y;
+        clipCoordinates[i * 4 + 2] = vertex.z;
+        clipCoordinates[i * 4 + 3] = vertex.w;
+        outcodes[i] = (byte) Clipper.getOutcode(vertex.x, vertex.y, vertex.z, vertex.w);
+        transformedVertices[i] = toRaster(vertex.x, vertex.y, vertex.z, vertex.w);
+    }
+
+    /**
+     * Perspective divide followed by the viewport transform
+     */
+    private Vector3 toRaster(double x, double y, double z, double w) {
         return new Vector3(
-                (vertexNormalized.x + 1) / 2 * camera.getImageWidth(),
-                (1 - vertexNormalized.y) / 2 * camera.getImageHeight(),
-                vertexNormalized.z
+                (x / w + 1) / 2 * camera.getImageWidth(),
+                (1 - y / w) / 2 * camera.getImageHeight(),
+                z / w
         );
     }
 
-    private Matrix computePerspectiveProjectionMatrix() {
-        double n = camera.getNearClippingPlane();
-        double f = camera.getFarClippingPlane();
-        double r = camera.getCanvasRight();
-        double l = camera.getCanvasLeft();
-        double t = camera.getCanvasTop();
-        double b = camera.getCanvasBottom();
-
-        return new Matrix(new double[] {
-                2 * n / (r - l)  , 0                , 0                    , 0 ,
-                0                , 2 * n / (t - b)  , 0                    , 0 ,
-                (r + l) / (r - l), (t + b) / (t - b), - (f + n) / (f - n)  , -1,
-                0                , 0                , - 2 * f * n / (f - n), 0
-        }, 4, 4);
-    }
-
-    private Matrix computeOrthographicProjectionMatrix() {
-        double n = camera.getNearClippingPlane();
-        double f = camera.getFarClippingPlane();
-        double r = camera.getCanvasRight();
-        double l = camera.getCanvasLeft();
-        double t = camera.getCanvasTop();
-        double b = camera.getCanvasBottom();
-
-        return new Matrix(new double[] {
-                2 / (r - l), 0          , 0            , - (r + l) / (r - l),
-                0          , 2 / (t - b), 0            , - (t + b) / (t - b),
-                0          , 0          , - 2 / (f - n), - (f + n) / (f - n),
-                0          , 0          , 0            , 1
-        }, 4, 4);
-    }
-
-    public void setObjectToPaint(ArrayList<Triangle> triangles) {
-        currentObject = triangles;
+    /**
+     * Enables clipping by the side planes of the view frustum as well as by the near and far ones
+     */
+    public void setClipToSides(boolean clipToSides) {
+        this.clipToSides = clipToSides;
+    }
+
+    public boolean isClipToSides() {
+        return clipToSides;
+    }
+
+    public void setObjectToPaint(IndexedMesh mesh) {
+        currentObject = mesh;
+    }
+
+    /**
+     * Enables drawing of the levels of detail of the object (see IndexedMesh.buildLevelsOfDetail) instead of the object
+     * itself where the difference is less than a pixel. Nothing changes until the levels are built.
+     */
+    public void setLevelOfDetail(boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    public boolean isLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /**
+     * Enables the coarse depth test of triangles before filling them. It never changes the image,
+     * only skips triangles which would not pass the depth test anyway.
+     */
+    public void setOcclusionCulling(boolean occlusionCulling) {
+        this.occlusionCulling = occlusionCulling;
+    }
+
+    public boolean isOcclusionCulling() {
+        return occlusionCulling;
+    }
+
+    /**
+     * Enables filling of the visible triangles front to back, cluster by cluster (leaves of the mesh hierarchy,
+     * see DepthSorter), so that more pixels are rejected by the depth test instead of being written and overwritten.
+     * Triangles overlapping at the same depth may cover each other differently than in the mesh order.
+     */
+    public void setDepthSorting(boolean depthSorting) {
+        this.depthSorting = depthSorting;
+    }
+
+    public boolean isDepthSorting() {
+        return depthSorting;
+    }
+
+    public CullMode getCullMode() {
+        return cullMode;
+    }
+
+    public void setCullMode(CullMode cullMode) {
+        this.cullMode = cullMode;
     }
 
     public void setShowWireframe(boolean showWireframe) {
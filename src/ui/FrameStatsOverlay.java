@@ -0,0 +1,97 @@
+package ui;
+
+import renderers.FrameStats;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Draws frame statistics over the rendered image: the last value, rolling average and 99th percentile
+ * of every stage timing and counter over the last frames.
+ */
+public class FrameStatsOverlay {
+    private static final int WINDOW = 120; // frames
+
+    private static final String[] COUNTER_NAMES = {
+            "Level of detail", "Triangles submitted", "Triangles off-screen", "Clusters sorted", "Triangles clipped", "Triangles culled", "Triangles drawn",
+            "Pixels tested", "Pixels depth-passed", "Pixels occluded", "Pixels covered", "Overdraw, %"
+    };
+
+    private static final int STAGES = FrameStats.Stage.values().length;
+
+    // samples[metric][frame % WINDOW], stage timings come first, then counters
+    private final long[][] samples = new long[STAGES + COUNTER_NAMES.length][WINDOW];
+    private int frames;
+
+    public void add(FrameStats stats) {
+        int frame = frames % WINDOW;
+
+        for (FrameStats.Stage stage : FrameStats.Stage.values()) {
+            samples[stage.ordinal()][frame] = stats.getStageTime(stage);
+        }
+
+        long[] counters = {
+                stats.getLevelOfDetail(), stats.getTrianglesSubmitted(), stats.getTrianglesOffScreen(), stats.getClustersSorted(), stats.getTrianglesClipped(), stats.getTrianglesCulled(), stats.getTrianglesDrawn(),
+                stats.getPixelsTested(), stats.getPixelsDepthPassed(),
+                stats.getPixelsOccluded(), stats.getPixelsCovered(), Math.round(stats.getOverdraw() * 100)
+        };
+        for (int i = 0; i < counters.length; i++) {
+            samples[STAGES + i][frame] = counters[i];
+        }
+
+        frames++;
+    }
+
+    public void paint(Graphics g) {
+        if (frames == 0) {
+            return;
+        }
+
+        int count = Math.min(frames, WINDOW);
+        int last = (frames - 1) % WINDOW;
+
+        String[] lines = new String[samples.length + 1];
+        lines[0] = String.format("%-22s %10s %10s %10s", "(" + count + " frames)", "last", "avg", "p99");
+
+        for (int metric = 0; metric < samples.length; metric++) {
+            long[] window = Arrays.copyOf(samples[metric], count);
+            Arrays.sort(window);
+
+            double sum = 0;
+            for (long value : window) {
+                sum += value;
+            }
+
+            long lastValue = samples[metric][last];
+            double average = sum / count;
+            long p99 = window[Math.min(count - 1, (int) Math.ceil(0.99 * count) - 1)];
+
+            if (metric < STAGES) {
+                String name = FrameStats.Stage.values()[metric].name().charAt(0)
+                        + FrameStats.Stage.values()[metric].name().substring(1).toLowerCase() + ", ms";
+                lines[metric + 1] = String.format("%-22s %10.2f %10.2f %10.2f", name, lastValue / 1e6, average / 1e6, p99 / 1e6);
+            } else {
+                lines[metric + 1] = String.format("%-22s %10d %10.0f %10d", COUNTER_NAMES[metric - STAGES], lastValue, average, p99);
+            }
+        }
+
+        Graphics2D graphics2D = (Graphics2D) g.create();
+        graphics2D.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        FontMetrics metrics = graphics2D.getFontMetrics();
+
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+
+        graphics2D.setColor(new Color(0, 0, 0, 160));
+        graphics2D.fillRect(0, 0, width + 8, lines.length * metrics.getHeight() + 8);
+
+        graphics2D.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            graphics2D.drawString(lines[i], 4, 4 + metrics.getAscent() + i * metrics.getHeight());
+        }
+
+        graphics2D.dispose();
+    }
+}
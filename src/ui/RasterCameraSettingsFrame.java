@@ -12,11 +12,11 @@ import java.util.Objects;
 public class RasterCameraSettingsFrame extends JFrame {
 
     private final PinholeRasterCamera camera;
-    private final JPanel renderPanel;
+    private final RenderPanel renderPanel;
 
     DecimalFormat decimalFormat = new DecimalFormat("####.##");
 
-    public RasterCameraSettingsFrame(PinholeRasterCamera camera, JPanel renderPanel) {
+    public RasterCameraSettingsFrame(PinholeRasterCamera camera, RenderPanel renderPanel) {
         this.camera = camera;
         this.renderPanel = renderPanel;
 
@@ -43,7 +43,7 @@ public class RasterCameraSettingsFrame extends JFrame {
         JComboBox<PinholeRasterCamera.ProjectionType> projectionTypeComboBox = new JComboBox<>(PinholeRasterCamera.ProjectionType.values());
         projectionTypeComboBox.addActionListener(l -> {
             camera.setProjectionType((PinholeRasterCamera.ProjectionType) projectionTypeComboBox.getSelectedItem());
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         c.gridx = 0;
@@ -77,7 +77,7 @@ public class RasterCameraSettingsFrame extends JFrame {
             int value = focalLengthSlider.getValue();
             focalLengthTextField.setText(decimalFormat.format(value));
             camera.setFocalLength(value);
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
         focalLengthTextField.addActionListener(l -> {
             double value = Integer.parseInt(focalLengthTextField.getText());
@@ -85,7 +85,7 @@ public class RasterCameraSettingsFrame extends JFrame {
             focalLengthTextField.setText(decimalFormat.format(value));
             focalLengthSlider.setValue((int) value);
             camera.setFocalLength(value);
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         GridBagConstraints g = new GridBagConstraints();
@@ -108,7 +108,7 @@ public class RasterCameraSettingsFrame extends JFrame {
             int value = fieldOfViewSlider.getValue();
             fieldOfViewTextField.setText(decimalFormat.format(value));
             camera.setFieldOfView(value);
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
         fieldOfViewTextField.addActionListener(l -> {
             double value = Integer.parseInt(fieldOfViewTextField.getText());
@@ -116,7 +116,7 @@ public class RasterCameraSettingsFrame extends JFrame {
             fieldOfViewTextField.setText(decimalFormat.format(value));
             fieldOfViewSlider.setValue((int) value);
             camera.setFieldOfView(value);
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         g.gridx = 0;
@@ -140,7 +140,7 @@ public class RasterCameraSettingsFrame extends JFrame {
             fieldOfViewTextField.setText(decimalFormat.format(
                     Math.max(fieldOfViewSlider.getMinimum(), Math.min(camera.getFieldOfView(), fieldOfViewSlider.getMaximum()))));
             cl.show(lensUnitsPanel, Objects.requireNonNull(cameraSetupModeJComboBox.getSelectedItem()).toString());
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         c.fill = GridBagConstraints.BOTH;
@@ -154,7 +154,7 @@ public class RasterCameraSettingsFrame extends JFrame {
         nearClippingPaneTextField.setColumns(3);
         nearClippingPaneTextField.addActionListener(l -> {
             camera.setNearClippingPlane(Double.parseDouble(nearClippingPaneTextField.getText()));
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         JLabel farClippingPaneLabel = new JLabel("Far clipping pane");
@@ -162,7 +162,7 @@ public class RasterCameraSettingsFrame extends JFrame {
         farClippingPaneTextField.setColumns(3);
         farClippingPaneTextField.addActionListener(l -> {
             camera.setFarClippingPlane(Double.parseDouble(farClippingPaneTextField.getText()));
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         c.gridx = 0;
@@ -201,13 +201,13 @@ public class RasterCameraSettingsFrame extends JFrame {
             synchronizeAspectRatioWidth(filmApertureWidthTextField, filmApertureHeightTextField, filmApertureAspectRatioComboBox);
             camera.setFilmApertureWidth(Double.parseDouble(filmApertureWidthTextField.getText()));
             camera.setFilmApertureHeight(Double.parseDouble(filmApertureHeightTextField.getText()));
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
         filmApertureHeightTextField.addActionListener(l -> {
             synchronizeAspectRatioHeight(filmApertureHeightTextField, filmApertureWidthTextField, filmApertureAspectRatioComboBox);
             camera.setFilmApertureWidth(Double.parseDouble(filmApertureWidthTextField.getText()));
             camera.setFilmApertureHeight(Double.parseDouble(filmApertureHeightTextField.getText()));
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         c.insets = new Insets(3, 3, 3, 3);
@@ -255,13 +255,13 @@ public class RasterCameraSettingsFrame extends JFrame {
             synchronizeAspectRatioWidth(imageWidthTextField, imageHeightTextField, imageAspectRatioComboBox);
             camera.setImageWidth((int) Double.parseDouble(imageWidthTextField.getText()));
             camera.setImageHeight((int) Double.parseDouble(imageHeightTextField.getText()));
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
         imageHeightTextField.addActionListener(l -> {
             synchronizeAspectRatioHeight(imageHeightTextField, imageWidthTextField, imageAspectRatioComboBox);
             camera.setImageWidth((int) Double.parseDouble(imageWidthTextField.getText()));
             camera.setImageHeight((int) Double.parseDouble(imageHeightTextField.getText()));
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         c.gridx = 0;
@@ -295,7 +295,7 @@ public class RasterCameraSettingsFrame extends JFrame {
         resolutionGateComboBox.setSelectedItem(PinholeRasterCamera.FitResolutionGate.OVERSCAN);
         resolutionGateComboBox.addActionListener(l -> {
             camera.setFitResolutionGate((PinholeRasterCamera.FitResolutionGate) resolutionGateComboBox.getSelectedItem());
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         c.gridx = 0;
@@ -411,7 +411,7 @@ public class RasterCameraSettingsFrame extends JFrame {
                     m20, m21, m22, m23,
                     m30, m31, m32, m33,
             }, 4, 4));
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
 
         GridBagConstraints c = new GridBagConstraints();
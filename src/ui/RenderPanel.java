@@ -1,30 +1,93 @@
 package ui;
 
 import cameras.PinholeRasterCamera;
-import maths.*;
+import meshes.IndexedMesh;
+import renderers.Pose;
 import renderers.Rasterizer;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
+/**
+ * Shows the object rendered by a dedicated render thread, so that dragging a slider over a heavy mesh does not block
+ * the event dispatch thread. Settings and the pose are changed on the event dispatch thread and requested by
+ * requestRender. Requests made while a frame is being rendered are coalesced, only the latest one is rendered and
+ * the ones it replaced are dropped. A request which changes neither the camera, nor the mesh or any other setting,
+ * nor the pose is not rendered at all.
+ * <p>
+ * While the input is active (a slider is dragged or requests follow each other closer than SETTLE_DELAY), frames are
+ * rendered as previews at a reduced resolution, which adapts to the measured render time so that a preview takes about
+ * TARGET_FRAME_TIME.
+ * When no request comes for SETTLE_DELAY after a preview, the same pose is rendered again at full resolution.
+ * <p>
+ * Finished frames are presented (previews scaled up) into an image, which is drawn on the event dispatch thread
+ * by paintComponent.
+ */
 public class RenderPanel extends JPanel {
+    private static final long TARGET_FRAME_TIME = 33_000_000; // ns
+    private static final long SETTLE_DELAY = 150; // ms
+    // Preview resolution is a multiple of the step (of the full one) between the minimum and 1
+    private static final double MIN_PREVIEW_SCALE = 0.25;
+    private static final double PREVIEW_SCALE_STEP = 0.125;
+
     private final PinholeRasterCamera camera;
     private final JSlider yawSlider;
     private final JSlider pitchSlider;
     private final JSlider rollSlider;
 
+    // Used only by the render thread, which gets its own copy of the camera (see requestRender)
     private final Rasterizer renderer;
+    // Null while frame statistics are hidden, used only by the render thread
+    private FrameStatsOverlay statsOverlay;
+    private Pose renderedPose;
+    private boolean renderedPreview;
+    // Full resolution camera and the preview one, which has the same settings and a reduced resolution
+    private PinholeRasterCamera renderCamera;
+    private PinholeRasterCamera previewCamera;
+    // Scale of the resolution which is expected to render a preview in TARGET_FRAME_TIME
+    private double previewScale = 1;
+
+    // Setting changes and the pose waiting for the render thread, guarded by requestLock.
+    // The pose is null while nothing is requested
+    private final Object requestLock = new Object();
+    private final List<Consumer<Rasterizer>> pendingUpdates = new ArrayList<>();
+    private Pose pendingPose;
+    // Request came shortly after the previous one, i.e. the input is active
+    private boolean pendingInteractive;
+    private long lastRequestTime;
+    private boolean interactivePreview = true;
+    private long droppedFrames;
+    // Version of the camera given to the render thread last and the mesh set last, used only on the event dispatch thread
+    private long scheduledCameraVersion = -1;
+    private IndexedMesh mesh;
+
+    // Last finished frame and its timings, guarded by frameLock. The frame is null until the first one is finished
+    private final Object frameLock = new Object();
+    private BufferedImage frame;
+    private long rasterizeTime;
+    private long presentTime;
+    private double frameScale = 1;
 
     @Override
     public void paintComponent(Graphics g) {
+        super.paintComponent(g);
         setPreferredSize(new Dimension((int) camera.getImageWidth(), (int) camera.getImageHeight()));
         parentFrame.setSize(getPreferredSize());
-        renderer.setGraphics(g);
-        renderer.setYaw(yawSlider.getValue());
-        renderer.setPitch(pitchSlider.getValue());
-        renderer.setRoll(rollSlider.getValue());
-        renderer.render();
+
+        synchronized (frameLock) {
+            if (frame == null) {
+                requestRender();
+                return;
+            }
+
+            g.drawImage(frame, 0, 0, null);
+            setToolTipText(String.format("Rasterize: %.2f ms, present: %.2f ms, resolution: %.0f%%, frames dropped: %d",
+                    rasterizeTime / 1e6, presentTime / 1e6, frameScale * 100, getDroppedFrames()));
+        }
     }
 
     private final JFrame parentFrame;
@@ -36,27 +99,227 @@ public class RenderPanel extends JPanel {
         this.rollSlider = rollSlider;
         setPreferredSize(new Dimension(512, 512));
         camera = new PinholeRasterCamera();
-        renderer = new Rasterizer(camera);
+        renderCamera = new PinholeRasterCamera(camera);
+        renderer = new Rasterizer(renderCamera);
+        renderer.setLevelOfDetail(true);
+        scheduledCameraVersion = camera.getVersion();
+
+        Thread renderThread = new Thread(this::renderLoop, "Render thread");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /**
+     * Requests a frame with the current pose of the sliders and the current camera settings, should be called
+     * on the event dispatch thread after any of them (or any setting of the panel) changes.
+     * Returns immediately, the frame is rendered and shown later.
+     */
+    public void requestRender() {
+        // Camera is edited on this thread, the render thread gets a copy whenever it changes
+        if (camera.getVersion() != scheduledCameraVersion) {
+            scheduledCameraVersion = camera.getVersion();
+            PinholeRasterCamera cameraCopy = new PinholeRasterCamera(camera);
+            update(r -> {
+                renderCamera = cameraCopy;
+                previewCamera = null;
+            });
+        }
+
+        synchronized (requestLock) {
+            if (pendingPose != null) {
+                droppedFrames++;
+            }
+
+            long time = System.currentTimeMillis();
+            boolean adjusting = yawSlider.getValueIsAdjusting() || pitchSlider.getValueIsAdjusting() || rollSlider.getValueIsAdjusting();
+            if (adjusting || time - lastRequestTime < SETTLE_DELAY) {
+                pendingInteractive = true;
+            }
+            lastRequestTime = time;
+            pendingPose = new Pose(yawSlider.getValue(), pitchSlider.getValue(), rollSlider.getValue());
+            requestLock.notify();
+        }
+    }
+
+    /**
+     * Queues a change of the renderer, it is applied on the render thread before the next requested frame
+     */
+    private void update(Consumer<Rasterizer> update) {
+        synchronized (requestLock) {
+            pendingUpdates.add(update);
+        }
+    }
+
+    private void renderLoop() {
+        List<Consumer<Rasterizer>> updates = new ArrayList<>();
+
+        while (true) {
+            Pose pose;
+            boolean preview;
+            synchronized (requestLock) {
+                try {
+                    // Preview is refined once no other request comes for the settle delay
+                    if (pendingPose == null && renderedPreview) {
+                        requestLock.wait(SETTLE_DELAY);
+                    }
+                    while (pendingPose == null && !renderedPreview) {
+                        requestLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (pendingPose != null) {
+                    pose = pendingPose;
+                    preview = pendingInteractive && interactivePreview;
+                } else {
+                    pose = renderedPose;
+                    preview = false;
+                }
+                pendingPose = null;
+                pendingInteractive = false;
+                updates.addAll(pendingUpdates);
+                pendingUpdates.clear();
+            }
+
+            // Same image as the last frame
+            if (updates.isEmpty() && pose.equals(renderedPose) && (preview || !renderedPreview)) {
+                continue;
+            }
+
+            updates.forEach(update -> update.accept(renderer));
+            updates.clear();
+
+            double scale = preview ? previewScale : 1;
+            renderer.setCamera(scale < 1 ? getPreviewCamera(scale) : renderCamera);
+            renderer.setYaw(pose.yaw());
+            renderer.setPitch(pose.pitch());
+            renderer.setRoll(pose.roll());
+            renderer.render();
+            renderedPose = pose;
+            renderedPreview = scale < 1;
+
+            // Time is roughly proportional to the number of pixels, i.e. to the square of the scale
+            double targetScale = scale * Math.sqrt((double) TARGET_FRAME_TIME / Math.max(renderer.getRasterizeTime(), 1));
+            previewScale = Math.max(MIN_PREVIEW_SCALE,
+                    Math.min(1, Math.floor(targetScale / PREVIEW_SCALE_STEP) * PREVIEW_SCALE_STEP));
+
+            presentFrame(scale);
+            repaint();
+        }
+    }
+
+    private PinholeRasterCamera getPreviewCamera(double scale) {
+        int width = Math.max(1, (int) Math.round(renderCamera.getImageWidth() * scale));
+        int height = Math.max(1, (int) Math.round(renderCamera.getImageHeight() * scale));
+
+        if (previewCamera == null || previewCamera.getImageWidth() != width || previewCamera.getImageHeight() != height) {
+            previewCamera = new PinholeRasterCamera(renderCamera);
+            previewCamera.setImageWidth(width);
+            previewCamera.setImageHeight(height);
+        }
+
+        return previewCamera;
+    }
+
+    private void presentFrame(double scale) {
+        BufferedImage rendered = renderer.getFrame();
+        int width = (int) renderCamera.getImageWidth();
+        int height = (int) renderCamera.getImageHeight();
+
+        synchronized (frameLock) {
+            if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+                frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+
+            // Preview is stretched to the full resolution, statistics are drawn over it unscaled
+            Graphics2D g = frame.createGraphics();
+            g.scale((double) width / rendered.getWidth(), (double) height / rendered.getHeight());
+            renderer.present(g);
+            g.dispose();
+
+            if (statsOverlay != null) {
+                g = frame.createGraphics();
+                statsOverlay.add(renderer.getStats());
+                statsOverlay.paint(g);
+                g.dispose();
+            }
+
+            rasterizeTime = renderer.getRasterizeTime();
+            presentTime = renderer.getPresentTime();
+            frameScale = scale;
+        }
+    }
+
+    /**
+     * @return number of requested frames which were replaced by a later request before being rendered
+     */
+    public long getDroppedFrames() {
+        synchronized (requestLock) {
+            return droppedFrames;
+        }
     }
 
+    /**
+     * Enables rendering at a reduced resolution while the input is active, see the class description
+     */
+    public void setInteractivePreview(boolean interactivePreview) {
+        synchronized (requestLock) {
+            this.interactivePreview = interactivePreview;
+        }
+    }
 
     public void setShowWireframe(boolean showWireframe) {
-        renderer.setShowWireframe(showWireframe);
+        update(r -> r.setShowWireframe(showWireframe));
     }
 
     public void setShowFaces(boolean showFaces) {
-        renderer.setShowFaces(showFaces);
+        update(r -> r.setShowFaces(showFaces));
     }
 
     public void setShowBoundingBoxes(boolean showBoundingBoxes) {
-        renderer.setShowBoundingBoxes(showBoundingBoxes);
+        update(r -> r.setShowBoundingBoxes(showBoundingBoxes));
     }
 
+    public void setCullMode(Rasterizer.CullMode cullMode) {
+        update(r -> r.setCullMode(cullMode));
+    }
+
+    public void setOcclusionCulling(boolean occlusionCulling) {
+        update(r -> r.setOcclusionCulling(occlusionCulling));
+    }
+
+    public void setDepthSorting(boolean depthSorting) {
+        update(r -> r.setDepthSorting(depthSorting));
+    }
+
+    public void setShowStats(boolean showStats) {
+        update(r -> {
+            r.setStatsEnabled(showStats);
+            statsOverlay = showStats ? new FrameStatsOverlay() : null;
+        });
+    }
+
+    /**
+     * @return camera edited on the event dispatch thread, changes are picked up by the next requestRender
+     */
     public PinholeRasterCamera getCamera() {
         return camera;
     }
 
-    public void setObjectToPaint(ArrayList<Triangle> tris) {
-        renderer.setObjectToPaint(tris);
+    public void setLevelOfDetail(boolean levelOfDetail) {
+        update(r -> r.setLevelOfDetail(levelOfDetail));
+    }
+
+    public void setObjectToPaint(IndexedMesh mesh) {
+        this.mesh = mesh;
+        update(r -> r.setObjectToPaint(mesh));
+    }
+
+    /**
+     * @return mesh set last on the event dispatch thread, null if none was set
+     */
+    public IndexedMesh getObjectToPaint() {
+        return mesh;
     }
-}
\ No newline at end of file
+}
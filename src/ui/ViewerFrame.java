@@ -1,11 +1,14 @@
 package ui;
 
-import maths.Triangle;
+import meshes.IndexedMesh;
+import meshes.MeshWelder;
+import parsers.MeshCache;
 import parsers.OBJParser;
+import renderers.Rasterizer;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
+import java.io.File;
 
 public class ViewerFrame extends JFrame {
     private RenderPanel renderPanel;
@@ -26,8 +29,51 @@ public class ViewerFrame extends JFrame {
             int result = fileChooser.showOpenDialog(this);
 
             if (result == JFileChooser.APPROVE_OPTION) {
-                ArrayList<Triangle> tris = new OBJParser().parse(fileChooser.getSelectedFile());
-                renderPanel.setObjectToPaint(tris);
+                File file = fileChooser.getSelectedFile();
+
+                long startTime = System.nanoTime();
+                OBJParser parser = new OBJParser();
+                IndexedMesh mesh = MeshCache.read(file, parser);
+
+                if (mesh != null) {
+                    setTitle(String.format("%s - %d triangles, loaded from cache in %.0f ms", file.getName(),
+                            mesh.getTriangleCount(), (System.nanoTime() - startTime) / 1e6));
+                } else {
+                    mesh = parser.parse(file);
+                    MeshCache.write(file, mesh, parser);
+                    MeshWelder.Result weld = parser.getLastWeld();
+                    setTitle(String.format("%s - %d triangles, parsed in %.0f ms (%.1f MB/s), welded %d vertices and removed %d degenerate triangles (%.1f MB)",
+                            file.getName(), mesh.getTriangleCount(), parser.getLastParseTime() / 1e6, parser.getLastThroughput(),
+                            weld.verticesRemoved(), weld.trianglesRemoved(), weld.getBytesSaved() / 1e6));
+                }
+
+                renderPanel.setObjectToPaint(mesh);
+                renderPanel.requestRender();
+
+                // Levels of detail are built in the background, then cached and shown if the mesh is still open.
+                // A failure of either is added to the title, the full mesh is shown anyway
+                if (mesh.getLevelsOfDetail() == null) {
+                    IndexedMesh loaded = mesh;
+                    mesh.buildLevelsOfDetail().whenComplete((levels, error) -> {
+                        boolean cached = error == null && MeshCache.write(file, loaded, parser);
+                        SwingUtilities.invokeLater(() -> {
+                            if (renderPanel.getObjectToPaint() != loaded) {
+                                return;
+                            }
+
+                            if (error != null) {
+                                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                                setTitle(getTitle() + ", levels of detail failed: " + cause);
+                            } else {
+                                if (!cached) {
+                                    setTitle(getTitle() + ", levels of detail could not be cached");
+                                }
+                                renderPanel.setObjectToPaint(loaded);
+                                renderPanel.requestRender();
+                            }
+                        });
+                    });
+                }
             }
 
         });
@@ -37,22 +83,71 @@ public class ViewerFrame extends JFrame {
         JCheckBoxMenuItem showWireframeMenuItem = new JCheckBoxMenuItem("Wireframe");
         showWireframeMenuItem.addActionListener(l -> {
             renderPanel.setShowWireframe(showWireframeMenuItem.getState());
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
         JCheckBoxMenuItem showFacesMenuItem = new JCheckBoxMenuItem("Faces");
         showFacesMenuItem.setState(true);
         showFacesMenuItem.addActionListener(l -> {
             renderPanel.setShowFaces(showFacesMenuItem.getState());
-            renderPanel.repaint();
+            renderPanel.requestRender();
         });
         JCheckBoxMenuItem showBoundingBoxesMenuItem = new JCheckBoxMenuItem("Bounding boxes");
         showBoundingBoxesMenuItem.addActionListener(l -> {
             renderPanel.setShowBoundingBoxes(showBoundingBoxesMenuItem.getState());
-            renderPanel.repaint();
+            renderPanel.requestRender();
+        });
+        JCheckBoxMenuItem showStatsMenuItem = new JCheckBoxMenuItem("Frame statistics");
+        showStatsMenuItem.addActionListener(l -> {
+            renderPanel.setShowStats(showStatsMenuItem.getState());
+            renderPanel.requestRender();
         });
         viewMenu.add(showWireframeMenuItem);
         viewMenu.add(showFacesMenuItem);
         viewMenu.add(showBoundingBoxesMenuItem);
+        viewMenu.add(showStatsMenuItem);
+
+        JMenu cullingMenu = new JMenu("Face culling");
+        ButtonGroup cullingGroup = new ButtonGroup();
+        for (Rasterizer.CullMode cullMode : Rasterizer.CullMode.values()) {
+            JRadioButtonMenuItem cullModeMenuItem = new JRadioButtonMenuItem(
+                    cullMode.name().charAt(0) + cullMode.name().substring(1).toLowerCase());
+            cullModeMenuItem.setSelected(cullMode == Rasterizer.CullMode.NONE); // Default of the rasterizer
+            cullModeMenuItem.addActionListener(l -> {
+                renderPanel.setCullMode(cullMode);
+                renderPanel.requestRender();
+            });
+            cullingGroup.add(cullModeMenuItem);
+            cullingMenu.add(cullModeMenuItem);
+        }
+        viewMenu.add(cullingMenu);
+
+        JCheckBoxMenuItem occlusionCullingMenuItem = new JCheckBoxMenuItem("Occlusion culling");
+        occlusionCullingMenuItem.setState(true); // Default of the rasterizer
+        occlusionCullingMenuItem.addActionListener(l -> {
+            renderPanel.setOcclusionCulling(occlusionCullingMenuItem.getState());
+            renderPanel.requestRender();
+        });
+        viewMenu.add(occlusionCullingMenuItem);
+
+        JCheckBoxMenuItem depthSortingMenuItem = new JCheckBoxMenuItem("Front-to-back order");
+        depthSortingMenuItem.addActionListener(l -> {
+            renderPanel.setDepthSorting(depthSortingMenuItem.getState());
+            renderPanel.requestRender();
+        });
+        viewMenu.add(depthSortingMenuItem);
+
+        JCheckBoxMenuItem levelOfDetailMenuItem = new JCheckBoxMenuItem("Levels of detail");
+        levelOfDetailMenuItem.setState(true); // Default of the render panel
+        levelOfDetailMenuItem.addActionListener(l -> {
+            renderPanel.setLevelOfDetail(levelOfDetailMenuItem.getState());
+            renderPanel.requestRender();
+        });
+        viewMenu.add(levelOfDetailMenuItem);
+
+        JCheckBoxMenuItem interactivePreviewMenuItem = new JCheckBoxMenuItem("Low resolution while dragging");
+        interactivePreviewMenuItem.setState(true); // Default of the render panel
+        interactivePreviewMenuItem.addActionListener(l -> renderPanel.setInteractivePreview(interactivePreviewMenuItem.getState()));
+        viewMenu.add(interactivePreviewMenuItem);
 
         JMenu cameraMenu = new JMenu("Camera");
 
@@ -69,7 +164,7 @@ public class ViewerFrame extends JFrame {
 
         JSlider yawSlider = new JSlider(JSlider.HORIZONTAL, 0, 360, 180);
         yawSlider.setToolTipText("Rotation around Oy");
-        yawSlider.addChangeListener(l -> renderPanel.repaint());
+        yawSlider.addChangeListener(l -> renderPanel.requestRender());
 
         c.gridx = 0;
         c.fill = GridBagConstraints.BOTH;
@@ -81,7 +176,7 @@ public class ViewerFrame extends JFrame {
 
         JSlider pitchSlider = new JSlider(JSlider.VERTICAL, 0, 360, 180);
         pitchSlider.setToolTipText("Rotation around Ox");
-        pitchSlider.addChangeListener(l -> renderPanel.repaint());
+        pitchSlider.addChangeListener(l -> renderPanel.requestRender());
 
         c.gridx = 2;
         c.gridy = 0;
@@ -92,7 +187,7 @@ public class ViewerFrame extends JFrame {
 
         JSlider rollSlider = new JSlider(JSlider.VERTICAL, 0, 360, 180);
         rollSlider.setToolTipText("Rotation around Oz");
-        rollSlider.addChangeListener(l -> renderPanel.repaint());
+        rollSlider.addChangeListener(l -> renderPanel.requestRender());
 
         c.gridx = 0;
         c.gridy = 0;
@@ -1,12 +1,15 @@
 package util;
 
-import maths.Triangle;
 import maths.Vector3;
+import meshes.IndexedMesh;
+import meshes.MeshWelder;
 
+import java.awt.*;
 import java.util.ArrayList;
+import java.util.Random;
 
 public class Models3D {
-    public static ArrayList<Triangle> getXMasTreeTriangles() {
+    public static IndexedMesh getXMasTree() {
         ArrayList<Vector3> vertices = new ArrayList<>();
         vertices.add(new Vector3(        0,    39.034,         0));
         vertices.add(new Vector3(  0.76212,    36.843,         0));
@@ -183,12 +186,26 @@ public class Models3D {
                 107, 137, 109, 109, 139, 140, 109, 140, 112, 112, 140, 141, 112, 142, 143,
                 112, 143, 116, 116, 143, 144, 116, 145, 119
         };
-        ArrayList<Triangle> triangles = new ArrayList<>();
+        float[] x = new float[vertices.size()];
+        float[] y = new float[vertices.size()];
+        float[] z = new float[vertices.size()];
+        for (int i = 0; i < vertices.size(); i++) {
+            x[i] = (float) vertices.get(i).x;
+            y[i] = (float) vertices.get(i).y;
+            z[i] = (float) vertices.get(i).z;
+        }
 
-        for (int i = 0; i < indices.length; i += 3) {
-            triangles.add(new Triangle(vertices.get(indices[i]), vertices.get(indices[i + 1]), vertices.get(indices[i + 2])));
+        int[] colors = new int[indices.length / 3];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = getRandomColor().getRGB();
         }
 
-        return triangles;
+        // Many vertices of the tree are repeated
+        return MeshWelder.weld(new IndexedMesh(x, y, z, indices, colors), 0).mesh();
+    }
+
+    private static Color getRandomColor() {
+        Random random = new Random();
+        return new Color(random.nextFloat(1), random.nextFloat(1), random.nextFloat(1));
     }
 }